@@ -0,0 +1,122 @@
+package com.vitataf.watchface;
+
+/**
+ * Pure Java ARGB_8888 to ARGB_1332 quantization kernels.
+ * <p>
+ * Pixels are exchanged as packed ARGB ints in row-major order, the layout produced by
+ * {@code Bitmap.getPixels}, so the kernels can run on the JVM without a device.
+ */
+public final class Argb1332 {
+
+    /** Number of entries in the table returned by {@link #colorTable()}. */
+    public static final int TABLE_SIZE = 512;
+
+    /** Color used for every non-black pixel of the blue day-of-week font. */
+    public static final int BLUE_RGB = 0x20A0C0;
+
+    /** Opaque layer: the top alpha bit is kept. */
+    public static final int MODE_OPAQUE = 0;
+    /** Font strip: alpha is dropped. */
+    public static final int MODE_TRANSPARENT = 1;
+    /** Day-of-week font: every colored pixel becomes {@link #BLUE_RGB}. */
+    public static final int MODE_BLUE = 2;
+
+    private Argb1332() {
+    }
+
+    /**
+     * Builds the lookup table from a 9 bit alpha/red/green/blue index (1/3/3/2 bits, alpha
+     * highest) to the ARGB_8888 color it expands to.
+     */
+    public static int[] colorTable() {
+        int[] map = new int[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            int blue = i & 0x3;
+            double prop = blue / 3f;
+            map[i] |= (int)Math.round(255 * prop);
+
+            int green = (i >> 2) & 0x7;
+            prop = green / 7f;
+            map[i] |= (int)Math.round(255 * prop) << 8;
+
+            int red = (i >> 5) & 0x7;
+            prop = red / 7f;
+            map[i] |= (int)Math.round(255 * prop) << 16;
+
+            int alpha = i >> 8;
+            map[i] |= 0xFF000000 * alpha;
+        }
+        return map;
+    }
+
+    /**
+     * Quantizes {@code pixels} in place with one of the {@code MODE_} conversions.
+     *
+     * @return {@code pixels}
+     */
+    public static int[] quantize(int[] pixels, int mode, int[] table) {
+        switch (mode) {
+            case MODE_OPAQUE:
+                return quantize(pixels, pixels, table, false);
+            case MODE_TRANSPARENT:
+                return quantize(pixels, pixels, table, true);
+            case MODE_BLUE:
+                return quantizeBlue(pixels, pixels);
+            default:
+                throw new IllegalArgumentException("Unknown quantization mode " + mode);
+        }
+    }
+
+    /**
+     * Quantizes {@code pixels}, an image {@code width} pixels wide, in place with one of the
+     * {@code MODE_} conversions, using {@code strategy} for the opaque and transparent modes.
+     *
+     * @return {@code pixels}
+     */
+    public static int[] quantize(int[] pixels, int width, int mode,
+            QuantizationStrategy strategy, int[] table) {
+        switch (mode) {
+            case MODE_OPAQUE:
+                return strategy.quantize(pixels, width, table, false);
+            case MODE_TRANSPARENT:
+                return strategy.quantize(pixels, width, table, true);
+            case MODE_BLUE:
+                return quantizeBlue(pixels, pixels);
+            default:
+                throw new IllegalArgumentException("Unknown quantization mode " + mode);
+        }
+    }
+
+    /**
+     * Crudely converts ARGB_8888 pixels to the ARGB_1332 color space by truncating the low bits
+     * of each channel. {@code dst} may be the same array as {@code src}.
+     *
+     * @param transparent when true the alpha bit is dropped, leaving every pixel transparent
+     * @return {@code dst}
+     */
+    public static int[] quantize(int[] src, int[] dst, int[] table, boolean transparent) {
+        int alphaMask = transparent ? 0 : 1;
+        for (int i = 0, n = src.length; i < n; i++) {
+            int color = src[i];
+            int blue = (color >> 6) & 0x3;
+            int green = (color >> 13) & 0x7;
+            int red = (color >> 21) & 0x7;
+            int alpha = (color >>> 31) & alphaMask;
+            dst[i] = table[(alpha << 8) | (red << 5) | (green << 2) | blue];
+        }
+        return dst;
+    }
+
+    /**
+     * Maps every pixel with any color to {@link #BLUE_RGB} and every black pixel to zero, both
+     * with a cleared alpha channel. {@code dst} may be the same array as {@code src}.
+     *
+     * @return {@code dst}
+     */
+    public static int[] quantizeBlue(int[] src, int[] dst) {
+        for (int i = 0, n = src.length; i < n; i++) {
+            dst[i] = (src[i] & 0x00FFFFFF) != 0 ? BLUE_RGB : 0;
+        }
+        return dst;
+    }
+}
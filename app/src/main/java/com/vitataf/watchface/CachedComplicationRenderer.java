@@ -0,0 +1,219 @@
+package com.vitataf.watchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+/**
+ * Draws a text complication from pre-rendered strips.
+ * <p>
+ * It wraps the plain {@link ComplicationDrawable} that is handed to the
+ * {@code ComplicationComponent}, which has to stay a framework class to be sent to the
+ * offload renderer, and is configured through this class so that it knows every style input.
+ * The first time a text, title, size, typeface and style combination is drawn it is laid out
+ * and rendered by a drawable as usual and stored in a shared {@link ComplicationTextCache};
+ * from then on the strip is reused. Strips come in two kinds:
+ * <ul>
+ * <li>{@link #getAmbientStrip} renders through a second drawable kept in ambient mode and
+ * quantizes to 332, for the ambient image that stands in for the component in the
+ * decomposition. Only text that stays the same over time is taken, as the image is not
+ * redrawn until the data changes.</li>
+ * <li>{@link #draw} copies active strips onto the in-process Canvas renderer. Looking a strip
+ * up there allocates nothing.</li>
+ * </ul>
+ * Anything the key can't describe (images, icons, ranged values, inactive data) is drawn
+ * directly. Icons are left out because the drawable loads them asynchronously, so a strip
+ * drawn right after new data would miss its icon.
+ */
+public class CachedComplicationRenderer {
+
+    private final Context mContext;
+    private final int mId;
+    private final ComplicationDrawable mDrawable;
+    private final ComplicationDrawable mAmbientDrawable;
+    private final ComplicationTextCache mCache;
+    private final ComplicationTextCache.Key mLookup = new ComplicationTextCache.Key();
+    private final ResolvedText mText = new ResolvedText();
+    private final ResolvedText mTitle = new ResolvedText();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final int[] mColorTable = Argb1332.colorTable();
+
+    private ComplicationData mData;
+    private int mTextSizeAmbient;
+    private int mTitleSizeAmbient;
+    private Typeface mTextTypefaceAmbient;
+    private Typeface mTitleTypefaceAmbient;
+    private int mBorderStyleAmbient = ComplicationDrawable.BORDER_STYLE_SOLID;
+
+    public CachedComplicationRenderer(Context context, int id, ComplicationTextCache cache) {
+        mContext = context;
+        mId = id;
+        mDrawable = new ComplicationDrawable(context);
+        mAmbientDrawable = new ComplicationDrawable(context);
+        mAmbientDrawable.setInAmbientMode(true);
+        // The face is black behind it, and a transparent strip is cropped to its text.
+        mAmbientDrawable.setBackgroundColorAmbient(Color.TRANSPARENT);
+        mCache = cache;
+    }
+
+    /** The wrapped drawable, for the {@code ComplicationComponent}. Configure it here. */
+    public ComplicationDrawable getDrawable() {
+        return mDrawable;
+    }
+
+    public void setComplicationData(ComplicationData data) {
+        mDrawable.setComplicationData(data);
+        mAmbientDrawable.setComplicationData(data);
+        mData = data;
+    }
+
+    public void setBounds(int left, int top, int right, int bottom) {
+        mDrawable.setBounds(left, top, right, bottom);
+    }
+
+    public void setTextSizeAmbient(int textSize) {
+        mDrawable.setTextSizeAmbient(textSize);
+        mAmbientDrawable.setTextSizeAmbient(textSize);
+        mTextSizeAmbient = textSize;
+    }
+
+    public void setTitleSizeAmbient(int titleSize) {
+        mDrawable.setTitleSizeAmbient(titleSize);
+        mAmbientDrawable.setTitleSizeAmbient(titleSize);
+        mTitleSizeAmbient = titleSize;
+    }
+
+    public void setTextTypefaceAmbient(Typeface textTypeface) {
+        mDrawable.setTextTypefaceAmbient(textTypeface);
+        mAmbientDrawable.setTextTypefaceAmbient(textTypeface);
+        mTextTypefaceAmbient = textTypeface;
+    }
+
+    public void setTitleTypefaceAmbient(Typeface titleTypeface) {
+        mDrawable.setTitleTypefaceAmbient(titleTypeface);
+        mAmbientDrawable.setTitleTypefaceAmbient(titleTypeface);
+        mTitleTypefaceAmbient = titleTypeface;
+    }
+
+    public void setBorderStyleAmbient(int borderStyle) {
+        mDrawable.setBorderStyleAmbient(borderStyle);
+        mAmbientDrawable.setBorderStyleAmbient(borderStyle);
+        mBorderStyleAmbient = borderStyle;
+    }
+
+    /** Whether {@link #getAmbientStrip} would return a strip for the current data. */
+    public boolean hasAmbientStrip(long time) {
+        ComplicationData data = mData;
+        return data != null && isCacheable(data, time) && isStatic(data, time);
+    }
+
+    /**
+     * Returns the complication as drawn in ambient mode on a width x height strip at
+     * {@code time}, quantized to 332, or null if it must be drawn live. Can be called from the
+     * decomposition threads.
+     */
+    public QuantizedImage getAmbientStrip(int width, int height, long time) {
+        ComplicationData data = mData;
+        if (data == null || !isCacheable(data, time) || !isStatic(data, time))
+            return null;
+        ComplicationTextCache.Key key = new ComplicationTextCache.Key();
+        describe(key, data, width, height, time, new ResolvedText(), new ResolvedText(), true);
+        int[] pixels = new int[width * height];
+        Bitmap strip = mCache.get(key);
+        if (strip == null) {
+            strip = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mAmbientDrawable.setBounds(0, 0, width, height);
+            mAmbientDrawable.draw(new Canvas(strip), time);
+            // Rounding composites the anti-aliased text onto the black face before quantizing.
+            strip.getPixels(pixels, 0, width, 0, 0, width, height);
+            Argb1332.quantize(pixels, width, Argb1332.MODE_OPAQUE,
+                    QuantizationStrategies.ROUND, mColorTable);
+            strip.setPixels(pixels, 0, width, 0, 0, width, height);
+            mCache.put(key, strip);
+        } else {
+            strip.getPixels(pixels, 0, width, 0, 0, width, height);
+        }
+        return new QuantizedImage(width, height, Argb1332.MODE_OPAQUE, pixels);
+    }
+
+    /** Draws the complication as it looks at {@code time}, from a strip if it can be cached. */
+    public void draw(Canvas canvas, long time) {
+        Rect bounds = mDrawable.getBounds();
+        ComplicationData data = mData;
+        if (bounds.isEmpty() || data == null || !isCacheable(data, time)) {
+            mDrawable.draw(canvas, time);
+            return;
+        }
+        describe(mLookup, data, bounds.width(), bounds.height(), time, mText, mTitle, false);
+        Bitmap strip = mCache.get(mLookup);
+        if (strip == null) {
+            strip = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            Canvas stripCanvas = new Canvas(strip);
+            stripCanvas.translate(-bounds.left, -bounds.top);
+            mDrawable.draw(stripCanvas, time);
+            mCache.put(new ComplicationTextCache.Key(mLookup), strip);
+        }
+        canvas.drawBitmap(strip, bounds.left, bounds.top, mPaint);
+    }
+
+    // Whether the key can describe what data draws at time: active text and nothing else.
+    private static boolean isCacheable(ComplicationData data, long time) {
+        int type = data.getType();
+        return (type == ComplicationData.TYPE_LONG_TEXT
+                || type == ComplicationData.TYPE_SHORT_TEXT) && data.isActive(time)
+                && data.getSmallImage() == null && data.getIcon() == null;
+    }
+
+    // Whether data draws the same from time on, for as far as the scheduler looks.
+    private static boolean isStatic(ComplicationData data, long time) {
+        return ComplicationChangeScheduler.nextChange(data, time)
+                == ComplicationChangeScheduler.NEVER;
+    }
+
+    // Describes what cacheable data draws at time in key.
+    private void describe(ComplicationTextCache.Key key, ComplicationData data, int width,
+            int height, long time, ResolvedText resolvedText, ResolvedText resolvedTitle,
+            boolean ambient) {
+        boolean isLong = data.getType() == ComplicationData.TYPE_LONG_TEXT;
+        key.id = mId;
+        key.text = resolvedText.resolve(isLong ? data.getLongText() : data.getShortText(),
+                mContext, time);
+        key.title = resolvedTitle.resolve(isLong ? data.getLongTitle() : data.getShortTitle(),
+                mContext, time);
+        key.width = width;
+        key.height = height;
+        // Active strips are drawn in the drawable's default style, which is never changed.
+        key.textSize = ambient ? mTextSizeAmbient : 0;
+        key.titleSize = ambient ? mTitleSizeAmbient : 0;
+        key.textTypeface = ambient ? mTextTypefaceAmbient : null;
+        key.titleTypeface = ambient ? mTitleTypefaceAmbient : null;
+        key.borderStyle = ambient ? mBorderStyleAmbient : 0;
+        key.ambient = ambient;
+    }
+
+    // The text a ComplicationText resolved to, reused for as long as it resolves the same.
+    private static final class ResolvedText {
+        private ComplicationText mSource;
+        private long mTime;
+        private CharSequence mValue;
+
+        CharSequence resolve(ComplicationText source, Context context, long time) {
+            if (source == null)
+                return null;
+            if (source != mSource || !source.returnsSameText(mTime, time)) {
+                mSource = source;
+                mTime = time;
+                mValue = source.getText(context, time);
+            }
+            return mValue;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.vitataf.watchface;
+
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+
+/**
+ * Works out when a complication next looks different, so the engine can draw at that instant
+ * instead of leaving a countdown stale until the next time tick.
+ * <p>
+ * A complication changes when its validity window opens or closes and when one of its texts
+ * resolves differently, e.g. a countdown or "in 5 min". ComplicationText doesn't say when
+ * that is, so it is probed with {@link ComplicationText#returnsSameText} at growing steps
+ * from the next whole second and the first change found is narrowed down to the second.
+ * Changes more than {@link #HORIZON_MILLIS} away are not looked for.
+ */
+public final class ComplicationChangeScheduler {
+
+    /** Returned when nothing visible changes within the horizon. */
+    public static final long NEVER = Long.MAX_VALUE;
+
+    public static final long HORIZON_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final long SECOND_MILLIS = 1000;
+
+    private ComplicationChangeScheduler() {
+    }
+
+    /** Returns the first instant after {@code now} at which {@code data} draws differently. */
+    public static long nextChange(ComplicationData data, long now) {
+        long next = NEVER;
+        long start = data.getStartDateTimeMillis();
+        long end = data.getEndDateTimeMillis();
+        if (start > now)
+            next = start;
+        if (end > now && end < next)
+            next = end;
+        if (!data.isActive(now))
+            return next;
+        switch (data.getType()) {
+            case ComplicationData.TYPE_LONG_TEXT:
+                next = nextChange(data.getLongText(), now, next);
+                next = nextChange(data.getLongTitle(), now, next);
+                break;
+            case ComplicationData.TYPE_SHORT_TEXT:
+            case ComplicationData.TYPE_RANGED_VALUE:
+                next = nextChange(data.getShortText(), now, next);
+                next = nextChange(data.getShortTitle(), now, next);
+                break;
+        }
+        return next;
+    }
+
+    // Returns the first whole second after now at which text changes, if before limit.
+    private static long nextChange(ComplicationText text, long now, long limit) {
+        if (text == null)
+            return limit;
+        long horizon = Math.min(limit, now + HORIZON_MILLIS);
+        long same = now;
+        long step = SECOND_MILLIS;
+        long probe = (now / SECOND_MILLIS + 1) * SECOND_MILLIS;
+        while (probe < horizon) {
+            if (!text.returnsSameText(now, probe)) {
+                // Narrow (same, probe] down to the whole second the text changes at. Past the
+                // first probe both ends are whole seconds.
+                while (probe - same > SECOND_MILLIS) {
+                    long mid = same + (probe - same) / (2 * SECOND_MILLIS) * SECOND_MILLIS;
+                    if (text.returnsSameText(now, mid))
+                        same = mid;
+                    else
+                        probe = mid;
+                }
+                return probe;
+            }
+            same = probe;
+            probe += step;
+            step *= 2;
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,91 @@
+package com.vitataf.watchface;
+
+import android.content.Context;
+import android.graphics.drawable.Icon;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+
+/**
+ * 64-bit FNV-1a hash of what a ComplicationData shows: its type, the texts and titles as
+ * resolved at a given time, the identity of its icon and images, ranged values and validity
+ * window.
+ * <p>
+ * Two payloads with the same fingerprint draw the same complication, so an update whose
+ * fingerprint matches the one on screen can be dropped. Text is hashed character by
+ * character and icons by resource, so computing a fingerprint allocates nothing itself.
+ * Icons that are not resources can't be identified without their pixels and hash by
+ * instance, so they always count as a change.
+ */
+public final class ComplicationFingerprint {
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ComplicationFingerprint() {
+    }
+
+    public static long of(ComplicationData data, Context context, long now) {
+        long h = OFFSET_BASIS;
+        int type = data.getType();
+        h = mix(h, type);
+        h = mix(h, data.getStartDateTimeMillis());
+        h = mix(h, data.getEndDateTimeMillis());
+        switch (type) {
+            case ComplicationData.TYPE_LONG_TEXT:
+                h = mix(h, data.getLongText(), context, now);
+                h = mix(h, data.getLongTitle(), context, now);
+                h = mix(h, data.getIcon());
+                h = mix(h, data.getSmallImage());
+                break;
+            case ComplicationData.TYPE_RANGED_VALUE:
+                h = mix(h, Float.floatToIntBits(data.getValue()));
+                h = mix(h, Float.floatToIntBits(data.getMinValue()));
+                h = mix(h, Float.floatToIntBits(data.getMaxValue()));
+                // Falls through to the texts and icon it shares with short text.
+            case ComplicationData.TYPE_SHORT_TEXT:
+                h = mix(h, data.getShortText(), context, now);
+                h = mix(h, data.getShortTitle(), context, now);
+                h = mix(h, data.getIcon());
+                break;
+            case ComplicationData.TYPE_ICON:
+                h = mix(h, data.getIcon());
+                break;
+            case ComplicationData.TYPE_SMALL_IMAGE:
+                h = mix(h, data.getSmallImage());
+                break;
+            case ComplicationData.TYPE_LARGE_IMAGE:
+                h = mix(h, data.getLargeImage());
+                break;
+        }
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ (value & 0xFF)) * PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    private static long mix(long h, ComplicationText text, Context context, long now) {
+        if (text == null)
+            return mix(h, -1);
+        CharSequence s = text.getText(context, now);
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            h = (h ^ (c & 0xFF)) * PRIME;
+            h = (h ^ (c >>> 8)) * PRIME;
+        }
+        return mix(h, s.length());
+    }
+
+    private static long mix(long h, Icon icon) {
+        if (icon == null)
+            return mix(h, -1);
+        if (icon.getType() != Icon.TYPE_RESOURCE)
+            return mix(h, System.identityHashCode(icon));
+        h = mix(h, icon.getResId());
+        return mix(h, icon.getResPackage().hashCode());
+    }
+}
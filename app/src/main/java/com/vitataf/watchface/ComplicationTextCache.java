@@ -0,0 +1,129 @@
+package com.vitataf.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.text.TextUtils;
+import android.util.LruCache;
+
+/**
+ * Bounded in-memory cache of complications pre-rendered as strips, quantized to 332 for
+ * ambient mode.
+ * <p>
+ * Entries are keyed by everything that changes what a text complication looks like: the
+ * complication ID, its resolved text and title, the size of the drawing, the size and typeface
+ * of the text and of the title, the border style and whether it is drawn in ambient mode.
+ * Values that come back (calendar titles, weather strings) then cost one lookup instead of a
+ * text layout and rasterization. The least recently used strips are dropped once they take up
+ * more than the byte budget.
+ */
+public class ComplicationTextCache {
+
+    private final LruCache<Key, Bitmap> mStrips;
+
+    public ComplicationTextCache(int maxBytes) {
+        mStrips = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    public Bitmap get(Key key) {
+        return mStrips.get(key);
+    }
+
+    public void put(Key key, Bitmap strip) {
+        mStrips.put(key, strip);
+    }
+
+    public void clear() {
+        mStrips.evictAll();
+    }
+
+    public String describe() {
+        return mStrips.size() + " of " + mStrips.maxSize() + " B, " + mStrips.hitCount()
+                + " hits, " + mStrips.missCount() + " misses";
+    }
+
+    /**
+     * What a pre-rendered complication strip was drawn from. Keys are mutable so that one can
+     * be reused for every lookup; a key must not change once it is {@link #put}.
+     */
+    public static final class Key {
+        int id;
+        CharSequence text;
+        CharSequence title;
+        int width;
+        int height;
+        int textSize;
+        int titleSize;
+        Typeface textTypeface;
+        Typeface titleTypeface;
+        int borderStyle;
+        boolean ambient;
+
+        public Key() {
+        }
+
+        /** Copies {@code key}, e.g. a lookup key, to be stored. */
+        public Key(Key key) {
+            // Resolved texts may be spans or reused buffers; only their characters matter.
+            id = key.id;
+            text = key.text == null ? null : key.text.toString();
+            title = key.title == null ? null : key.title.toString();
+            width = key.width;
+            height = key.height;
+            textSize = key.textSize;
+            titleSize = key.titleSize;
+            textTypeface = key.textTypeface;
+            titleTypeface = key.titleTypeface;
+            borderStyle = key.borderStyle;
+            ambient = key.ambient;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key)o;
+            return id == k.id && width == k.width && height == k.height
+                    && textSize == k.textSize && titleSize == k.titleSize
+                    && borderStyle == k.borderStyle && ambient == k.ambient
+                    && TextUtils.equals(text, k.text) && TextUtils.equals(title, k.title)
+                    && equal(textTypeface, k.textTypeface)
+                    && equal(titleTypeface, k.titleTypeface);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = id;
+            h = 31 * h + hash(text);
+            h = 31 * h + hash(title);
+            h = 31 * h + width;
+            h = 31 * h + height;
+            h = 31 * h + textSize;
+            h = 31 * h + titleSize;
+            h = 31 * h + (textTypeface == null ? 0 : textTypeface.hashCode());
+            h = 31 * h + (titleTypeface == null ? 0 : titleTypeface.hashCode());
+            h = 31 * h + borderStyle;
+            return 31 * h + (ambient ? 1 : 0);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        // Same as String.hashCode, for any CharSequence with the same characters.
+        private static int hash(CharSequence s) {
+            if (s == null)
+                return 0;
+            int h = 0;
+            for (int i = 0, n = s.length(); i < n; i++)
+                h = 31 * h + s.charAt(i);
+            return h;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.vitataf.watchface;
+
+import android.support.wearable.watchface.decomposition.ComplicationComponent;
+import android.support.wearable.watchface.decomposition.FontComponent;
+import android.support.wearable.watchface.decomposition.ImageComponent;
+import android.support.wearable.watchface.decomposition.NumberComponent;
+import android.support.wearable.watchface.decomposition.WatchFaceDecomposition;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Records which inputs each part of the decomposition depends on and keeps the components last
+ * built for it, so a change only rebuilds the parts that depend on the changed inputs.
+ * <p>
+ * A node can be lazy: it is left out of the decomposition, and never built, until
+ * {@link #materializeLazyNodes()} is called, so it does not delay the first frame.
+ */
+public class ComponentGraph {
+
+    // Inputs a node can depend on, combined as a bit mask.
+    public static final int INPUT_DISPLAY_WIDTH = 1;
+    public static final int INPUT_TYPEFACE = 1 << 1;
+    public static final int INPUT_COLORS = 1 << 2;
+    public static final int INPUT_LOCALE = 1 << 3;
+    public static final int INPUT_TOP_COMPLICATION = 1 << 4;
+    public static final int INPUT_BOTTOM_COMPLICATION = 1 << 5;
+    public static final int INPUT_ALL = (1 << 6) - 1;
+
+    /**
+     * Builds the components of one part of the watch face with IDs from its own block.
+     */
+    public abstract static class Node
+            implements Callable<List<? extends WatchFaceDecomposition.Component>> {
+        final String name;
+        final int idBlock;
+        final int inputs;
+        final boolean lazy;
+
+        public Node(String name, int idBlock, int inputs) {
+            this(name, idBlock, inputs, false);
+        }
+
+        public Node(String name, int idBlock, int inputs, boolean lazy) {
+            this.name = name;
+            this.idBlock = idBlock;
+            this.inputs = inputs;
+            this.lazy = lazy;
+        }
+
+        public abstract List<? extends WatchFaceDecomposition.Component> build(
+                ComponentIdRange ids);
+
+        @Override
+        public List<? extends WatchFaceDecomposition.Component> call() {
+            return build(new ComponentIdRange(idBlock));
+        }
+    }
+
+    private final List<Node> mNodes = new ArrayList<>();
+    private final List<List<? extends WatchFaceDecomposition.Component>> mResults =
+            new ArrayList<>();
+    private final Set<Node> mDeferred = new HashSet<>();
+
+    public void add(Node node) {
+        mNodes.add(node);
+        mResults.add(null);
+        if (node.lazy)
+            mDeferred.add(node);
+    }
+
+    /**
+     * Returns the nodes that must be rebuilt after {@code changedInputs} changed, including
+     * any node that has never been built. Lazy nodes that have not been materialized are
+     * skipped.
+     */
+    public List<Node> getStaleNodes(int changedInputs) {
+        List<Node> stale = new ArrayList<>();
+        for (int i = 0; i < mNodes.size(); i++) {
+            Node node = mNodes.get(i);
+            if (mDeferred.contains(node))
+                continue;
+            if ((node.inputs & changedInputs) != 0 || mResults.get(i) == null)
+                stale.add(node);
+        }
+        return stale;
+    }
+
+    /**
+     * Lets every lazy node be built from now on.
+     *
+     * @return whether any lazy node was still pending, i.e. the decomposition must be rebuilt
+     */
+    public boolean materializeLazyNodes() {
+        boolean pending = !mDeferred.isEmpty();
+        mDeferred.clear();
+        return pending;
+    }
+
+    public void setResult(Node node, List<? extends WatchFaceDecomposition.Component> result) {
+        mResults.set(mNodes.indexOf(node), Collections.unmodifiableList(result));
+    }
+
+    /**
+     * Assembles a decomposition from the last result of every node, in the order the nodes
+     * were added, leaving out lazy nodes that have not been materialized. A component shared by
+     * several nodes, such as a font atlas, is added once.
+     */
+    public WatchFaceDecomposition assemble() {
+        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder();
+        Set<Integer> added = new HashSet<>();
+        for (int i = 0; i < mNodes.size(); i++) {
+            List<? extends WatchFaceDecomposition.Component> result = mResults.get(i);
+            if (mDeferred.contains(mNodes.get(i)))
+                continue;
+            if (result == null)
+                throw new IllegalStateException("Assembling before every node was built");
+            for (WatchFaceDecomposition.Component c : result) {
+                if (!added.add(c.getComponentId()))
+                    continue;
+                if (c instanceof ImageComponent)
+                    builder.addImageComponents((ImageComponent)c);
+                else if (c instanceof FontComponent)
+                    builder.addFontComponents((FontComponent)c);
+                else if (c instanceof NumberComponent)
+                    builder.addNumberComponents((NumberComponent)c);
+                else if (c instanceof ComplicationComponent)
+                    builder.addComplicationComponents((ComplicationComponent)c);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.vitataf.watchface;
+
+/**
+ * Hands out decomposition component IDs from a fixed block reserved for one component factory,
+ * so IDs do not depend on the order in which factories run.
+ */
+public final class ComponentIdRange {
+
+    /** Number of IDs reserved per block. */
+    public static final int BLOCK_SIZE = 16;
+
+    private final int mFirst;
+    private int mNext;
+
+    public ComponentIdRange(int block) {
+        mFirst = block * BLOCK_SIZE;
+        mNext = mFirst;
+    }
+
+    public int next() {
+        if (mNext - mFirst >= BLOCK_SIZE)
+            throw new IllegalStateException("Component ID block " + mFirst / BLOCK_SIZE
+                    + " is exhausted");
+        return mNext++;
+    }
+}
@@ -0,0 +1,143 @@
+package com.vitataf.watchface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shrinks a finished 332 layer to the smallest image that draws the same.
+ * <p>
+ * A layer of a single color becomes one pixel, which the offload renderer stretches over the
+ * component bounds without changing a pixel. Any other layer is cropped to the bounding box of
+ * its non-empty pixels, along with the position of the crop so the component bounds can be
+ * narrowed to match. An opaque layer only carries the top alpha bit, so its pixels are empty
+ * when that bit is clear, whatever their color; the font strips have no alpha at all and are
+ * empty where they are black.
+ * <p>
+ * Layers whose content is spread thinly, like the ring of ticks, can also be {@link #split}
+ * into a grid of tiles that are cropped one by one, so the empty middle is never uploaded.
+ */
+public final class ComponentImageEncoder {
+
+    /**
+     * An encoded layer and the region of the source image it covers, in source pixels.
+     */
+    public static final class Encoded {
+        public final QuantizedImage image;
+        public final int left;
+        public final int top;
+        public final int right;
+        public final int bottom;
+
+        Encoded(QuantizedImage image, int left, int top, int right, int bottom) {
+            this.image = image;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+    }
+
+    private ComponentImageEncoder() {
+    }
+
+    public static Encoded encode(QuantizedImage src) {
+        int[] pixels = src.pixels;
+        int w = src.width;
+        int h = src.height;
+
+        int first = pixels[0];
+        boolean solid = true;
+        for (int i = 1, n = pixels.length; i < n && solid; i++)
+            solid = pixels[i] == first;
+        if (solid)
+            return new Encoded(new QuantizedImage(1, 1, src.mode, new int[] {first}), 0, 0, w, h);
+
+        int mode = src.mode;
+        int left = w;
+        int top = h;
+        int right = 0;
+        int bottom = 0;
+        for (int y = 0; y < h; y++) {
+            int row = y * w;
+            for (int x = 0; x < w; x++) {
+                if (isEmpty(pixels[row + x], mode))
+                    continue;
+                if (x < left)
+                    left = x;
+                if (x >= right)
+                    right = x + 1;
+                if (top == h)
+                    top = y;
+                bottom = y + 1;
+            }
+        }
+        if (right == 0)
+            return new Encoded(new QuantizedImage(1, 1, mode, new int[] {0}), 0, 0, w, h);
+        if (left == 0 && top == 0 && right == w && bottom == h)
+            return new Encoded(src, 0, 0, w, h);
+
+        int cw = right - left;
+        int ch = bottom - top;
+        int[] cropped = new int[cw * ch];
+        for (int y = 0; y < ch; y++)
+            System.arraycopy(pixels, (top + y) * w + left, cropped, y * cw, cw);
+        return new Encoded(new QuantizedImage(cw, ch, src.mode, cropped), left, top, right,
+                bottom);
+    }
+
+    /**
+     * Splits {@code src} into a grid of {@code columns} by {@code rows} tiles and encodes each
+     * one. Tiles without content are dropped. The regions of the results are in the
+     * coordinates of {@code src}.
+     */
+    public static List<Encoded> split(QuantizedImage src, int columns, int rows) {
+        List<Encoded> tiles = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            int top = src.height * row / rows;
+            int bottom = src.height * (row + 1) / rows;
+            for (int column = 0; column < columns; column++) {
+                int left = src.width * column / columns;
+                int right = src.width * (column + 1) / columns;
+                if (right == left || bottom == top)
+                    continue;
+                int tw = right - left;
+                int[] pixels = new int[tw * (bottom - top)];
+                for (int y = top; y < bottom; y++) {
+                    System.arraycopy(src.pixels, y * src.width + left, pixels, (y - top) * tw,
+                            tw);
+                }
+                Encoded tile = encode(new QuantizedImage(tw, bottom - top, src.mode, pixels));
+                if (tile.image.pixels.length == 1 && isEmpty(tile.image.pixels[0], src.mode))
+                    continue;
+                tiles.add(new Encoded(tile.image, left + tile.left, top + tile.top,
+                        left + tile.right, top + tile.bottom));
+            }
+        }
+        return tiles;
+    }
+
+    private static boolean isEmpty(int pixel, int mode) {
+        if (mode == Argb1332.MODE_OPAQUE)
+            return pixel >>> 24 == 0;
+        return (pixel & 0x00FFFFFF) == 0;
+    }
+
+    /**
+     * Narrows {@code bounds} ({left, top, right, bottom}, in the coordinates the whole source
+     * image was placed at) to the region covered by {@code encoded}.
+     *
+     * @return {@code out}
+     */
+    public static float[] encodedBounds(Encoded encoded, int srcWidth, int srcHeight,
+            float[] bounds, float[] out) {
+        float sx = (bounds[2] - bounds[0]) / srcWidth;
+        float sy = (bounds[3] - bounds[1]) / srcHeight;
+        float left = bounds[0];
+        float top = bounds[1];
+        out[0] = left + encoded.left * sx;
+        out[1] = top + encoded.top * sy;
+        out[2] = left + encoded.right * sx;
+        out[3] = top + encoded.bottom * sy;
+        return out;
+    }
+}
@@ -0,0 +1,124 @@
+package com.vitataf.watchface;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Persistent cache of finished 332 decomposition bitmaps in the app's cache directory.
+ * <p>
+ * Entries are keyed by source (a resource ID and the height it was scaled to, or a generated
+ * layer name), display width, quantization mode and a hash of the installed app version, so
+ * an update or a different panel never reads stale pixels. Entries written by other app
+ * versions are deleted when the cache is opened.
+ */
+public class DecompositionBitmapCache {
+
+    private static final String TAG = "DecompositionCache";
+    private static final String DIRECTORY = "decomposition/v1";
+    private static final String SUFFIX = ".q332";
+
+    private final File mDirectory;
+    private final String mVersionHash;
+
+    public DecompositionBitmapCache(Context context) {
+        mDirectory = new File(context.getCacheDir(), DIRECTORY);
+        mVersionHash = versionHash(context);
+        pruneOtherVersions();
+    }
+
+    /**
+     * Returns the cached image for a resource scaled to {@code height} pixels (0 for its own
+     * size), or null if there is none.
+     */
+    public QuantizedImage get(int resId, int height, int width, int mode) {
+        return get(resourceKey(resId, height), width, mode);
+    }
+
+    /**
+     * Returns the cached image for a generated layer, or null if there is none.
+     */
+    public QuantizedImage get(String key, int width, int mode) {
+        File file = file(key, width, mode);
+        if (!file.isFile())
+            return null;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            QuantizedImage image = QuantizedImage.readFrom(in);
+            if (image.mode != mode)
+                throw new IOException("Mode mismatch in " + file.getName());
+            return image;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    public void put(int resId, int height, int width, QuantizedImage image) {
+        put(resourceKey(resId, height), width, image);
+    }
+
+    /**
+     * Stores {@code image}. The entry is written to a temporary file and renamed into place so
+     * that a crash mid-write never leaves a truncated entry behind.
+     */
+    public void put(String key, int width, QuantizedImage image) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDirectory);
+            return;
+        }
+        File file = file(key, width, image.mode);
+        File tmp = new File(mDirectory, file.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+            image.writeTo(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write cache entry " + file.getName(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.w(TAG, "Unable to commit cache entry " + file.getName());
+            tmp.delete();
+        }
+    }
+
+    private File file(String key, int width, int mode) {
+        return new File(mDirectory, mVersionHash + "_" + key + "_" + width + "_" + mode + SUFFIX);
+    }
+
+    private void pruneOtherVersions() {
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        for (File f : files) {
+            if (!f.getName().startsWith(mVersionHash + "_"))
+                f.delete();
+        }
+    }
+
+    private static String resourceKey(int resId, int height) {
+        return "res" + Integer.toHexString(resId) + "_h" + height;
+    }
+
+    private static String versionHash(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager()
+                    .getPackageInfo(context.getPackageName(), 0);
+            long hash = info.getLongVersionCode() * 31 + info.lastUpdateTime;
+            return Long.toHexString(hash);
+        } catch (PackageManager.NameNotFoundException e) {
+            // Can't happen for our own package; fall back to a key that is never reused.
+            return Long.toHexString(System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.vitataf.watchface;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Reuses the scratch bitmaps of the decomposition pipeline and keeps it inside a memory
+ * budget.
+ * <p>
+ * Intermediates (decoded resources, Canvas targets) are taken with {@link #acquire} or
+ * {@link #decodeResource} and handed back with {@link #release} once their pixels have been
+ * read. Released bitmaps are kept for reuse, least recently released first out, and recycled
+ * whenever pooled and live bytes together exceed the budget. Bitmaps that end up in components
+ * are never pooled; they are only counted per owner (a component graph node) with
+ * {@link #recordLive}.
+ */
+public class DecompositionBitmapPool {
+
+    private static final String TAG = "DecompositionPool";
+
+    private final long mMaxBytes;
+    private final LinkedList<Bitmap> mFree = new LinkedList<>();
+    private final Map<String, Long> mLiveBytes = new HashMap<>();
+    private final ThreadLocal<String> mOwner = new ThreadLocal<>();
+    private long mPooledBytes;
+    private long mTotalLiveBytes;
+
+    public DecompositionBitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns a cleared, mutable ARGB_8888 bitmap of the given size, reusing a pooled one of
+     * the same size if there is one.
+     */
+    public Bitmap acquire(int width, int height) {
+        Bitmap bm = take(width, height, false);
+        if (bm == null)
+            return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bm.eraseColor(0);
+        return bm;
+    }
+
+    /**
+     * Decodes a drawable resource unscaled into a mutable ARGB_8888 bitmap, decoding into a
+     * pooled bitmap that is large enough if there is one.
+     */
+    public Bitmap decodeResource(Resources res, int resId) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(res, resId, options);
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = take(options.outWidth, options.outHeight, true);
+        try {
+            return BitmapFactory.decodeResource(res, resId, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused after all; decode into a new one.
+            release(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeResource(res, resId, options);
+        }
+    }
+
+    /**
+     * Hands a scratch bitmap back for reuse. Immutable and recycled bitmaps are ignored.
+     */
+    public synchronized void release(Bitmap bm) {
+        if (bm == null || bm.isRecycled() || !bm.isMutable())
+            return;
+        mFree.addLast(bm);
+        mPooledBytes += bm.getAllocationByteCount();
+        trim();
+    }
+
+    /**
+     * Sets the owner that {@link #recordLive} charges on the calling thread and forgets what
+     * was charged to it before, as its components are about to be rebuilt.
+     */
+    public synchronized void beginOwner(String owner) {
+        mOwner.set(owner);
+        clearOwner(owner);
+    }
+
+    public void endOwner() {
+        mOwner.remove();
+    }
+
+    /**
+     * Forgets what was charged to {@code owner}, as the bitmaps it holds are about to be
+     * replaced.
+     */
+    public synchronized void clearOwner(String owner) {
+        Long previous = mLiveBytes.remove(owner);
+        if (previous != null)
+            mTotalLiveBytes -= previous;
+    }
+
+    /**
+     * Charges a bitmap that is handed to a component to the calling thread's owner.
+     */
+    public void recordLive(Bitmap bm) {
+        String owner = mOwner.get();
+        recordLive(owner == null ? "" : owner, bm);
+    }
+
+    /**
+     * Charges a bitmap that is handed to a component to {@code owner}, for owners that are
+     * not tied to a thread.
+     */
+    public synchronized void recordLive(String owner, Bitmap bm) {
+        long bytes = bm.getAllocationByteCount();
+        Long previous = mLiveBytes.get(owner);
+        mLiveBytes.put(owner, previous == null ? bytes : previous + bytes);
+        mTotalLiveBytes += bytes;
+        if (mTotalLiveBytes > mMaxBytes)
+            Log.w(TAG, "Live decomposition bitmaps exceed the budget: " + describe());
+        trim();
+    }
+
+    /** Recycles every pooled bitmap. */
+    public synchronized void clear() {
+        for (Bitmap bm : mFree)
+            bm.recycle();
+        mFree.clear();
+        mPooledBytes = 0;
+    }
+
+    public synchronized String describe() {
+        return "live " + mLiveBytes + " = " + mTotalLiveBytes + " B, pooled " + mPooledBytes
+                + " B, budget " + mMaxBytes + " B";
+    }
+
+    // Removes a pooled bitmap that fits, exactly or, for decoding, by byte count.
+    private synchronized Bitmap take(int width, int height, boolean anySize) {
+        long needed = (long)width * height * 4;
+        for (Iterator<Bitmap> it = mFree.iterator(); it.hasNext();) {
+            Bitmap bm = it.next();
+            boolean fits = anySize ? bm.getAllocationByteCount() >= needed
+                    : bm.getWidth() == width && bm.getHeight() == height;
+            if (fits && bm.getConfig() == Bitmap.Config.ARGB_8888) {
+                it.remove();
+                mPooledBytes -= bm.getAllocationByteCount();
+                return bm;
+            }
+        }
+        return null;
+    }
+
+    private void trim() {
+        while (!mFree.isEmpty() && mPooledBytes + mTotalLiveBytes > mMaxBytes) {
+            Bitmap bm = mFree.removeFirst();
+            mPooledBytes -= bm.getAllocationByteCount();
+            bm.recycle();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.vitataf.watchface;
+
+/**
+ * Pure Java geometry for the ring of minute ticks drawn by the background component.
+ */
+public final class DialGeometry {
+
+    /** Number of ticks around the dial. */
+    public static final int TICK_COUNT = 60;
+
+    /** Floats written per tick by {@link #tickSegments}: inner x, inner y, outer x, outer y. */
+    public static final int TICK_STRIDE = 4;
+
+    private DialGeometry() {
+    }
+
+    /**
+     * Computes the line segment of every tick in a square of side {@code w} pixels, writing
+     * {@link #TICK_STRIDE} floats per tick into {@code out} at {@code i * TICK_STRIDE}. Tick 0
+     * is at twelve o'clock and ticks advance clockwise.
+     *
+     * @return {@code out}
+     */
+    public static float[] tickSegments(int w, int radiusOffset, int tickLength, float[] out) {
+        int outerRadius = w / 2 - radiusOffset;
+        int innerRadius = outerRadius - tickLength;
+        DialTrig trig = DialTrig.MINUTES;
+        for (int i = TICK_COUNT; i --> 0;) {
+            float innerX = trig.sin(i) * innerRadius;
+            float innerY = -trig.cos(i) * innerRadius;
+            float outerX = trig.sin(i) * outerRadius;
+            float outerY = -trig.cos(i) * outerRadius;
+            int o = i * TICK_STRIDE;
+            out[o] = w / 2f + innerX;
+            out[o + 1] = w / 2f + innerY;
+            out[o + 2] = w / 2f + outerX;
+            out[o + 3] = w / 2f + outerY;
+        }
+        return out;
+    }
+
+    /** Returns whether tick {@code i} marks an hour. */
+    public static boolean isHourTick(int i) {
+        return i % 5 == 0;
+    }
+}
@@ -0,0 +1,39 @@
+package com.vitataf.watchface;
+
+/**
+ * Shared sine/cosine table for positions around the dial, computed once per process.
+ * <p>
+ * Position {@code i} of a table with {@code n} subdivisions is at {@code 2 * PI * i / n}
+ * radians, measured clockwise from twelve o'clock, so {@code sin} is the x and {@code -cos}
+ * the y of the unit vector in screen coordinates.
+ */
+public final class DialTrig {
+
+    /** One position per minute or second, e.g. the ticks. */
+    public static final DialTrig MINUTES = new DialTrig(60);
+
+    private final float[] mSin;
+    private final float[] mCos;
+
+    private DialTrig(int subdivisions) {
+        mSin = new float[subdivisions];
+        mCos = new float[subdivisions];
+        for (int i = 0; i < subdivisions; i++) {
+            double angle = 2 * Math.PI * i / subdivisions;
+            mSin[i] = (float)Math.sin(angle);
+            mCos[i] = (float)Math.cos(angle);
+        }
+    }
+
+    public int size() {
+        return mSin.length;
+    }
+
+    public float sin(int i) {
+        return mSin[i];
+    }
+
+    public float cos(int i) {
+        return mCos[i];
+    }
+}
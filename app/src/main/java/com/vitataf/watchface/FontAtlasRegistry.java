@@ -0,0 +1,181 @@
+package com.vitataf.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.support.wearable.watchface.decomposition.FontComponent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Shared registry of the digit atlases handed to {@link FontComponent}s.
+ * <p>
+ * Atlases are declared up front, loaded together with {@link #register}, and handed out by
+ * (typeface, glyph size, quantization mode). Atlases whose quantized pixels are identical share
+ * one {@link FontComponent}, so the bitmap is sent to the offload renderer once no matter how
+ * many {@code NumberComponent}s use it. Component IDs follow declaration order, which keeps
+ * them independent of how the atlases were loaded. The atlas bitmaps count against the
+ * {@link DecompositionBitmapPool} budget like any other component bitmap.
+ */
+public class FontAtlasRegistry {
+
+    /**
+     * Declares a digit atlas: a vertical strip of {@code digitCount} glyphs, each {@code size}
+     * pixels tall, taken from a drawable ({@code resId}) scaled to that size or rendered from
+     * a font ({@code fontResId}).
+     */
+    public static final class Spec {
+        public final String typeface;
+        public final int size;
+        public final int mode;
+        public final int digitCount;
+        public final int resId;
+        public final int fontResId;
+        public final String glyphs;
+
+        private Spec(String typeface, int size, int mode, int digitCount, int resId,
+                int fontResId, String glyphs) {
+            this.typeface = typeface;
+            this.size = size;
+            this.mode = mode;
+            this.digitCount = digitCount;
+            this.resId = resId;
+            this.fontResId = fontResId;
+            this.glyphs = glyphs;
+        }
+
+        /** An atlas decoded from a drawable strip. */
+        public static Spec fromDrawable(String typeface, int size, int mode, int digitCount,
+                int resId) {
+            return new Spec(typeface, size, mode, digitCount, resId, 0, null);
+        }
+
+        /** A 0-9 atlas rendered by {@link GlyphAtlasGenerator}. */
+        public static Spec fromFont(String typeface, int size, int mode, int fontResId) {
+            return fromFont(typeface, size, mode, fontResId, GlyphAtlasGenerator.DIGITS);
+        }
+
+        /** An atlas of {@code glyphs} rendered by {@link GlyphAtlasGenerator}. */
+        public static Spec fromFont(String typeface, int size, int mode, int fontResId,
+                String glyphs) {
+            return new Spec(typeface, size, mode, glyphs.length(), 0, fontResId, glyphs);
+        }
+
+        public boolean isGenerated() {
+            return fontResId != 0;
+        }
+
+        boolean matches(String typeface, int size, int mode) {
+            return this.typeface.equals(typeface) && this.size == size && this.mode == mode;
+        }
+    }
+
+    /**
+     * A registered atlas, its quantized pixels and the component that carries it.
+     */
+    public static final class Atlas {
+        public final FontComponent component;
+        public final QuantizedImage image;
+        public final int width;
+        public final int height;
+
+        Atlas(FontComponent component, QuantizedImage image) {
+            this.component = component;
+            this.image = image;
+            this.width = image.width;
+            this.height = image.height;
+        }
+    }
+
+    // Owner the atlas bitmaps are charged to in the pool.
+    private static final String POOL_OWNER = "fontAtlases";
+
+    private final List<Spec> mSpecs;
+    private final int mIdBlock;
+    private final DecompositionBitmapPool mPool;
+    private final StartupTrace mTrace;
+    private final Atlas[] mAtlases;
+    private final QuantizedImage[] mImages;
+
+    public FontAtlasRegistry(int idBlock, List<Spec> specs, DecompositionBitmapPool pool,
+            StartupTrace trace) {
+        if (specs.size() > ComponentIdRange.BLOCK_SIZE)
+            throw new IllegalArgumentException("Too many atlases for one ID block");
+        mIdBlock = idBlock;
+        mPool = pool;
+        mTrace = trace;
+        mSpecs = Collections.unmodifiableList(new ArrayList<>(specs));
+        mAtlases = new Atlas[specs.size()];
+        mImages = new QuantizedImage[specs.size()];
+    }
+
+    public List<Spec> getSpecs() {
+        return mSpecs;
+    }
+
+    /** Drops every registered atlas, e.g. before the atlases are loaded again. */
+    public synchronized void clear() {
+        Arrays.fill(mAtlases, null);
+        Arrays.fill(mImages, null);
+    }
+
+    /**
+     * Registers the loaded atlases, given in the order of {@link #getSpecs()}. An atlas with the
+     * same pixels as an earlier one reuses its component.
+     */
+    public synchronized void register(List<QuantizedImage> images) {
+        if (images.size() != mSpecs.size())
+            throw new IllegalArgumentException("Expected " + mSpecs.size() + " atlases");
+        mPool.clearOwner(POOL_OWNER);
+        for (int i = 0; i < mSpecs.size(); i++) {
+            QuantizedImage image = images.get(i);
+            Atlas atlas = null;
+            for (int j = 0; j < i && atlas == null; j++) {
+                if (sameAtlas(mImages[j], mSpecs.get(j), image, mSpecs.get(i)))
+                    atlas = mAtlases[j];
+            }
+            if (atlas == null) {
+                Bitmap bm = Bitmap.createBitmap(image.pixels, image.width, image.height,
+                        Bitmap.Config.ARGB_8888);
+                mTrace.recordBitmap(bm);
+                mPool.recordLive(POOL_OWNER, bm);
+                FontComponent component = new FontComponent.Builder()
+                        .setImage(Icon.createWithBitmap(bm))
+                        .setComponentId(mIdBlock * ComponentIdRange.BLOCK_SIZE + i)
+                        .setDigitCount(mSpecs.get(i).digitCount)
+                        .build();
+                atlas = new Atlas(component, image);
+            }
+            mAtlases[i] = atlas;
+            mImages[i] = image;
+        }
+    }
+
+    /**
+     * Returns the atlas registered for the given typeface, glyph size and mode.
+     *
+     * @throws IllegalStateException if no such atlas is declared or it is not registered yet
+     */
+    public synchronized Atlas get(String typeface, int size, int mode) {
+        for (int i = 0; i < mSpecs.size(); i++) {
+            if (mSpecs.get(i).matches(typeface, size, mode)) {
+                if (mAtlases[i] == null)
+                    throw new IllegalStateException("Atlas " + typeface + "/" + size
+                            + " requested before registration");
+                return mAtlases[i];
+            }
+        }
+        throw new IllegalStateException("No atlas declared for " + typeface + "/" + size
+                + "/" + mode);
+    }
+
+    private static boolean sameAtlas(QuantizedImage a, Spec aSpec, QuantizedImage b,
+            Spec bSpec) {
+        return aSpec.digitCount == bSpec.digitCount
+                && a.width == b.width
+                && a.height == b.height
+                && Arrays.equals(a.pixels, b.pixels);
+    }
+}
@@ -0,0 +1,142 @@
+package com.vitataf.watchface;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Rasterizes digit atlases straight from the bundled OTF fonts into the 332 color space.
+ * <p>
+ * An atlas is a vertical strip of glyphs in white on black, by default the digits 0-9, each in
+ * a cell {@code size} pixels tall, the same layout as the hand-made BMP strips. Cells are as
+ * wide as the widest digit whatever the glyphs, so every strip of a font and size lines up
+ * with its digit atlas; a space leaves its cell black. Results are memoized per (font, size,
+ * glyphs, mode) for the life of the process and kept in the persistent
+ * {@link DecompositionBitmapCache}, so each size is rendered once. Different atlases load side
+ * by side; threads asking for an atlas that is being loaded wait for that load.
+ */
+public class GlyphAtlasGenerator {
+
+    public static final String DIGITS = "0123456789";
+    public static final int DIGIT_COUNT = DIGITS.length();
+
+    // Height of a digit as a fraction of its cell, matching the BMP strips.
+    private static final float DIGIT_HEIGHT_RATIO = 0.75f;
+    private static final float REFERENCE_TEXT_SIZE = 100f;
+
+    private final Resources mResources;
+    private final TypefaceRegistry mTypefaces;
+    private final DecompositionBitmapCache mBitmapCache;
+    private final DecompositionBitmapPool mBitmapPool;
+    private final Map<String, FutureTask<QuantizedImage>> mAtlases = new HashMap<>();
+    private final int[] mColorTable = Argb1332.colorTable();
+
+    public GlyphAtlasGenerator(Resources resources, TypefaceRegistry typefaces,
+            DecompositionBitmapCache bitmapCache, DecompositionBitmapPool bitmapPool) {
+        mResources = resources;
+        mTypefaces = typefaces;
+        mBitmapCache = bitmapCache;
+        mBitmapPool = bitmapPool;
+    }
+
+    /**
+     * Returns the quantized atlas of {@code glyphs} in a font resource at a glyph cell height.
+     */
+    public QuantizedImage get(final int fontResId, final int size, final int mode,
+            final String glyphs) {
+        final String key = "glyphs_" + mResources.getResourceEntryName(fontResId) + "_" + size
+                + (DIGITS.equals(glyphs) ? "" : "_" + Integer.toHexString(glyphs.hashCode()));
+        String memoKey = key + "_" + mode;
+        FutureTask<QuantizedImage> task;
+        boolean load = false;
+        synchronized (this) {
+            task = mAtlases.get(memoKey);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<QuantizedImage>() {
+                    @Override
+                    public QuantizedImage call() {
+                        return load(key, fontResId, size, mode, glyphs);
+                    }
+                });
+                mAtlases.put(memoKey, task);
+                load = true;
+            }
+        }
+        if (load)
+            task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading a glyph atlas", e);
+        }
+    }
+
+    private QuantizedImage load(String key, int fontResId, int size, int mode, String glyphs) {
+        // Atlases depend only on the font and size, so the cache width is not significant.
+        QuantizedImage image = mBitmapCache.get(key, 0, mode);
+        if (image != null)
+            return image;
+        Bitmap bm = render(mTypefaces.get(fontResId), size, glyphs);
+        // Another load may take the bitmap as soon as it is released, so read it all first.
+        int width = bm.getWidth();
+        int height = bm.getHeight();
+        int[] pixels = new int[width * height];
+        bm.getPixels(pixels, 0, width, 0, 0, width, height);
+        mBitmapPool.release(bm);
+        Argb1332.quantize(pixels, mode, mColorTable);
+        image = new QuantizedImage(width, height, mode, pixels);
+        mBitmapCache.put(key, 0, image);
+        return image;
+    }
+
+    /**
+     * Draws glyphs top to bottom, each centered in a cell {@code size} pixels tall and as wide
+     * as the widest digit.
+     */
+    Bitmap render(Typeface typeface, int size, String glyphs) {
+        Paint paint = new Paint();
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        paint.setColor(Color.WHITE);
+        paint.setTextAlign(Paint.Align.CENTER);
+
+        // Scale the text so the digits fill the same share of the cell as in the BMP strips.
+        Rect bounds = new Rect();
+        paint.setTextSize(REFERENCE_TEXT_SIZE);
+        paint.getTextBounds("0", 0, 1, bounds);
+        paint.setTextSize(REFERENCE_TEXT_SIZE * size * DIGIT_HEIGHT_RATIO / bounds.height());
+
+        float cellWidth = 0;
+        for (int d = 0; d < DIGIT_COUNT; d++)
+            cellWidth = Math.max(cellWidth, paint.measureText(Integer.toString(d)));
+        int width = (int)Math.ceil(cellWidth);
+
+        Bitmap bm = mBitmapPool.acquire(width, size * glyphs.length());
+        Canvas canvas = new Canvas(bm);
+        canvas.drawColor(Color.BLACK);
+        for (int i = 0; i < glyphs.length(); i++) {
+            if (glyphs.charAt(i) == ' ')
+                continue;
+            paint.getTextBounds(glyphs, i, i + 1, bounds);
+            float baseline = i * size + (size - bounds.height()) / 2f - bounds.top;
+            canvas.drawText(glyphs, i, i + 1, width / 2f, baseline, paint);
+        }
+        return bm;
+    }
+}
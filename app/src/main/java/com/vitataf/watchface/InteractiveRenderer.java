@@ -0,0 +1,253 @@
+package com.vitataf.watchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.SparseArray;
+
+import java.util.Calendar;
+
+/**
+ * Draws the interactive watch face straight into the surface Canvas, as an alternative to
+ * letting the decomposition drawable render it.
+ * <p>
+ * It draws the same design from the same quantized assets, in the same z-order, as the
+ * decomposition: complications and digits over the black background, the blocking square over
+ * them, then the tick ring, scaled once into a cached layer the size of the surface, and the
+ * second hand, which ticks once a second. Layout happens in the pixels of the ambient area the
+ * assets were made for, scaled to the surface. Everything a frame needs is allocated up
+ * front, so {@link #draw} allocates nothing.
+ */
+public class InteractiveRenderer {
+
+    /**
+     * Debug broadcast action that picks the interactive renderer: the boolean extra
+     * {@link #EXTRA_CANVAS} selects this renderer, false the decomposition.
+     */
+    public static final String ACTION_SET_RENDERER =
+            "com.vitataf.watchface.SET_INTERACTIVE_RENDERER";
+    public static final String EXTRA_CANVAS = "canvas";
+
+    private final float mWidth;
+    private final SparseArray<CachedComplicationRenderer> mComplications;
+    private final int[] mComplicationIds;
+
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mBlockingPaint = new Paint();
+    private final Paint mSecondPaint = new Paint();
+    private final Rect mSrc = new Rect();
+    private final RectF mDst = new RectF();
+    private final float[] mBounds = new float[4];
+    private final float[] mClockRow = new float[WatchFaceLayout.CLOCK_ROW_SIZE];
+    private final float[] mDateRow = new float[WatchFaceLayout.DATE_ROW_SIZE];
+    private final RectF mBlocking = new RectF();
+    private final int[] mHand = new int[WatchFaceLayout.HAND_SIZE];
+
+    private Bitmap mTicks;
+    private Bitmap mTickLayer;
+    private Bitmap mClockDigits;
+    private int mClockCellHeight;
+    private Bitmap mColon;
+    private Bitmap mDays;
+    private int mDayCellHeight;
+    private Bitmap mDateDigits;
+    private int mDateCellHeight;
+
+    /**
+     * @param ambientWidth          width of the area the assets and the layout were made for
+     * @param complications         the complication renderers, by complication ID
+     * @param complicationIds       the IDs to draw
+     * @param blockedComplicationId the complication whose icon is hidden by a black square
+     */
+    public InteractiveRenderer(int ambientWidth,
+            SparseArray<CachedComplicationRenderer> complications, int[] complicationIds,
+            int blockedComplicationId) {
+        mWidth = ambientWidth;
+        mComplications = complications;
+        mComplicationIds = complicationIds;
+
+        mBlockingPaint.setColor(Color.BLACK);
+        mSecondPaint.setColor(Color.RED);
+        WatchFaceLayout.secondHand(ambientWidth, mHand);
+        mSecondPaint.setStrokeWidth(mHand[WatchFaceLayout.HAND_STROKE_WIDTH]);
+        mSecondPaint.setAntiAlias(true);
+        mSecondPaint.setStyle(Paint.Style.STROKE);
+
+        WatchFaceLayout.blockingBounds(blockedComplicationId, mWidth, mBounds);
+        mBlocking.set(mBounds[0] * mWidth, mBounds[1] * mWidth, mBounds[2] * mWidth,
+                mBounds[3] * mWidth);
+    }
+
+    public void setSecondHandColor(int color) {
+        mSecondPaint.setColor(color);
+    }
+
+    /** Sets the quantized tick ring, which covers the whole face. */
+    public void setTicks(QuantizedImage ticks) {
+        mTicks = toBitmap(ticks, false);
+        mTickLayer = null;
+    }
+
+    public void setClock(FontAtlasRegistry.Atlas digits, QuantizedImage colon) {
+        mClockDigits = toBitmap(digits.image, true);
+        mClockCellHeight = digits.height / 10;
+        mColon = toBitmap(colon, true);
+        WatchFaceLayout.clockRow(mWidth, digits.width, mClockCellHeight, colon.width,
+                mClockRow);
+    }
+
+    public void setDate(FontAtlasRegistry.Atlas days, FontAtlasRegistry.Atlas digits) {
+        mDays = toBitmap(days.image, true);
+        mDayCellHeight = days.height / 7;
+        mDateDigits = toBitmap(digits.image, true);
+        mDateCellHeight = digits.height / 10;
+        WatchFaceLayout.dateRow(mWidth, mDayCellHeight, mDateRow);
+    }
+
+    /** Recycles the bitmaps made for drawing. The renderer can't draw afterwards. */
+    public void release() {
+        recycle(mTicks);
+        recycle(mTickLayer);
+        recycle(mClockDigits);
+        recycle(mColon);
+        recycle(mDays);
+        recycle(mDateDigits);
+        mTicks = null;
+        mTickLayer = null;
+        mClockDigits = null;
+        mColon = null;
+        mDays = null;
+        mDateDigits = null;
+    }
+
+    public void draw(Canvas canvas, Rect bounds, Calendar calendar) {
+        canvas.drawColor(Color.BLACK);
+
+        int save = canvas.save();
+        float scale = bounds.width() / mWidth;
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale(scale, scale);
+
+        long now = calendar.getTimeInMillis();
+        for (int id : mComplicationIds) {
+            CachedComplicationRenderer complication = mComplications.get(id);
+            WatchFaceLayout.complicationBounds(id, mWidth, mBounds);
+            complication.setBounds(Math.round(mBounds[0] * mWidth),
+                    Math.round(mBounds[1] * mWidth), Math.round(mBounds[2] * mWidth),
+                    Math.round(mBounds[3] * mWidth));
+            complication.draw(canvas, now);
+        }
+        drawClock(canvas, calendar);
+        drawDate(canvas, calendar);
+        canvas.drawRect(mBlocking, mBlockingPaint);
+        canvas.restoreToCount(save);
+
+        drawTickLayer(canvas, bounds);
+
+        save = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        canvas.scale(scale, scale);
+        drawSecondHand(canvas, now);
+        canvas.restoreToCount(save);
+    }
+
+    private void drawTickLayer(Canvas canvas, Rect bounds) {
+        if (mTicks == null)
+            return;
+        if (mTickLayer == null || mTickLayer.getWidth() != bounds.width()
+                || mTickLayer.getHeight() != bounds.height()) {
+            recycle(mTickLayer);
+            mTickLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            new Canvas(mTickLayer).drawBitmap(mTicks, null,
+                    new Rect(0, 0, bounds.width(), bounds.height()), mBitmapPaint);
+        }
+        canvas.drawBitmap(mTickLayer, bounds.left, bounds.top, null);
+    }
+
+    private void drawClock(Canvas canvas, Calendar calendar) {
+        if (mClockDigits == null)
+            return;
+        int hour = calendar.get(Calendar.HOUR);
+        if (hour == 0)
+            hour = 12;
+        int minute = calendar.get(Calendar.MINUTE);
+        float top = mClockRow[WatchFaceLayout.CLOCK_TOP];
+        float hourX = mClockRow[WatchFaceLayout.CLOCK_HOUR_X];
+        float minuteX = mClockRow[WatchFaceLayout.CLOCK_MINUTE_X];
+        int cellWidth = mClockDigits.getWidth();
+
+        // Like the decomposition, hours below ten leave the tens cell empty.
+        if (hour >= 10)
+            drawDigit(canvas, mClockDigits, mClockCellHeight, hour / 10, hourX, top);
+        drawDigit(canvas, mClockDigits, mClockCellHeight, hour % 10, hourX + cellWidth, top);
+        canvas.drawBitmap(mColon, mClockRow[WatchFaceLayout.CLOCK_COLON_X],
+                top + (mClockCellHeight - mColon.getHeight()) / 2f, mBitmapPaint);
+        drawDigit(canvas, mClockDigits, mClockCellHeight, minute / 10, minuteX, top);
+        drawDigit(canvas, mClockDigits, mClockCellHeight, minute % 10, minuteX + cellWidth,
+                top);
+    }
+
+    private void drawDate(Canvas canvas, Calendar calendar) {
+        if (mDays == null)
+            return;
+        float top = mDateRow[WatchFaceLayout.DATE_TOP];
+        drawDigit(canvas, mDays, mDayCellHeight, calendar.get(Calendar.DAY_OF_WEEK) - 1,
+                mDateRow[WatchFaceLayout.DATE_DAY_OF_WEEK_X], top);
+
+        int day = calendar.get(Calendar.DAY_OF_MONTH);
+        float x = mDateRow[WatchFaceLayout.DATE_DAY_OF_MONTH_X];
+        if (day >= 10) {
+            drawDigit(canvas, mDateDigits, mDateCellHeight, day / 10, x, top);
+            x += mDateDigits.getWidth();
+        }
+        drawDigit(canvas, mDateDigits, mDateCellHeight, day % 10, x, top);
+    }
+
+    private void drawSecondHand(Canvas canvas, long now) {
+        float center = mWidth / 2f;
+        float radius = mHand[WatchFaceLayout.HAND_CENTER_DIAMETER] / 2f;
+        float tail = mHand[WatchFaceLayout.HAND_TAIL_LENGTH];
+        float length = mHand[WatchFaceLayout.HAND_LENGTH];
+        int save = canvas.save();
+        // Whole seconds only, like the decomposition's ticking second hand.
+        canvas.rotate(now / 1000 % 60 * 6f, center, center);
+        canvas.drawLine(center, center + radius, center, center + radius + tail,
+                mSecondPaint);
+        canvas.drawCircle(center, center, radius, mSecondPaint);
+        canvas.drawLine(center, center - radius, center, center - radius - length,
+                mSecondPaint);
+        canvas.restoreToCount(save);
+    }
+
+    // Copies cell `index` of a vertical strip of cells cellHeight pixels tall.
+    private void drawDigit(Canvas canvas, Bitmap strip, int cellHeight, int index, float x,
+            float y) {
+        mSrc.set(0, index * cellHeight, strip.getWidth(), (index + 1) * cellHeight);
+        mDst.set(x, y, x + strip.getWidth(), y + cellHeight);
+        canvas.drawBitmap(strip, mSrc, mDst, mBitmapPaint);
+    }
+
+    private static void recycle(Bitmap bm) {
+        if (bm != null)
+            bm.recycle();
+    }
+
+    /*
+     * Quantized font strips carry no alpha, which the offload renderer ignores but a Canvas
+     * does not. Strips are drawn opaque (their background is black, like the face), while
+     * other layers keep their alpha bit.
+     */
+    private static Bitmap toBitmap(QuantizedImage image, boolean opaque) {
+        int[] pixels = image.pixels;
+        if (opaque) {
+            pixels = pixels.clone();
+            for (int i = 0; i < pixels.length; i++)
+                pixels[i] |= 0xFF000000;
+        }
+        return Bitmap.createBitmap(pixels, image.width, image.height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -1,18 +1,24 @@
 package com.vitataf.watchface;
 
+import android.app.ActivityManager;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PointF;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.drawable.Drawable;
+import android.graphics.Typeface;
 import android.graphics.drawable.Icon;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.rendering.ComplicationDrawable;
 import android.support.wearable.watchface.decomposition.ComplicationComponent;
@@ -22,13 +28,28 @@ import android.support.wearable.watchface.decomposition.NumberComponent;
 import android.support.wearable.watchface.decomposition.WatchFaceDecomposition;
 import android.support.wearable.watchface.decompositionface.DecompositionWatchFaceService;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.SparseArray;
-
+import android.util.SparseIntArray;
+import android.util.SparseLongArray;
+import android.view.SurfaceHolder;
+
+import java.io.BufferedInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import static android.support.wearable.watchface.decomposition.WatchFaceDecomposition.Component.DISPLAY_AMBIENT;
@@ -132,145 +153,263 @@ public class MyWatchFace extends DecompositionWatchFaceService {
         return COMPLICATION_IDS;
     }
 
+    private static final String TAG = "MyWatchFace";
+
+    private static final String PRE_QUANTIZED_ASSET_DIR = "quantized";
+    private static final String TICKS_CACHE_KEY = "ticks";
+    private static final String SECOND_HAND_CACHE_KEY = "second_hand";
+
+    // The drawn layers are anti-aliased, so they are dithered rather than truncated. The ticks
+    // are static and get error diffusion; the rotating second hand gets an ordered dither,
+    // whose pattern does not depend on neighbouring pixels.
+    private static final QuantizationStrategy TICKS_QUANTIZATION =
+            QuantizationStrategies.FLOYD_STEINBERG;
+    private static final QuantizationStrategy SECOND_HAND_QUANTIZATION =
+            QuantizationStrategies.BAYER;
+
+    // The tick ring is split into a TICK_TILES x TICK_TILES grid; the border tiles, plus the
+    // background, must fit in one component ID block.
+    private static final int TICK_TILES = 4;
+
     private WeakReference<int[]> colorTable = new WeakReference<>(null);
+    private DecompositionBitmapCache mBitmapCache;
+    private DecompositionBitmapPool mBitmapPool;
+    private ComplicationTextCache mComplicationTextCache;
+    private TypefaceRegistry mTypefaces;
 
     // Should only be used in initialization methods
     // Crudely convert ARGB_8888 to ARGB_1332 color space
-    private Bitmap get332Bitmap(Bitmap src, boolean transparent) {
-        int[] table = colorTable.get();
-        if (table == null)
-            colorTable = new WeakReference<>(table = rgb888To332());
-        Bitmap bm = src.copy(Bitmap.Config.ARGB_8888, true);
-        for (int i = 0; i < src.getWidth(); i++) {
-            for (int j = 0; j < src.getHeight(); j++) {
-                int color = src.getPixel(i,j);
-                int blue = (color >> 6) & 0x3;
-                int green = (color >> 13) & 0x7;
-                int red = (color >> 21) & 0x7;
-                int alpha = color >>> 31;
-                int bgr = (red << 5) | (green << 2) | blue;
-                if (!transparent)
-                    bgr |= alpha << 8;
-                color = table[bgr];
-                bm.setPixel(i,j,color);
-            }
+    private QuantizedImage quantize(Bitmap src, int mode) {
+        return quantize(src, mode, QuantizationStrategies.TRUNCATE);
+    }
+
+    private QuantizedImage quantize(Bitmap src, int mode, QuantizationStrategy strategy) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int[] pixels = new int[width * height];
+        src.getPixels(pixels, 0, width, 0, 0, width, height);
+        return quantize(pixels, width, mode, strategy);
+    }
+
+    // Quantizes ARGB_8888 pixels in place.
+    private QuantizedImage quantize(int[] pixels, int width, int mode,
+            QuantizationStrategy strategy) {
+        StartupTrace.Section section = mStartupTrace.begin("quantize");
+        try {
+            int[] table = colorTable.get();
+            if (table == null)
+                colorTable = new WeakReference<>(table = rgb888To332());
+            Argb1332.quantize(pixels, width, mode, strategy, table);
+            return new QuantizedImage(width, pixels.length / width, mode, pixels);
+        } finally {
+            section.end();
         }
+    }
+
+    // Materializes a finished layer once, as the immutable bitmap its Icon wraps.
+    private Bitmap toBitmap(QuantizedImage image) {
+        Bitmap bm = Bitmap.createBitmap(image.pixels, image.width, image.height,
+                Bitmap.Config.ARGB_8888);
+        mStartupTrace.recordBitmap(bm);
+        mBitmapPool.recordLive(bm);
         return bm;
     }
 
-    // Should only be used in initialization methods
-    // Crudely convert ARGB_8888 to ARGB_1332 color space
-    private Bitmap get332BlueBitmap(Bitmap src) {
-        Bitmap bm = src.copy(Bitmap.Config.ARGB_8888, true);
-        for (int i = 0; i < src.getWidth(); i++) {
-            for (int j = 0; j < src.getHeight(); j++) {
-                int color = src.getPixel(i,j);
-                int rgb = color & 0x00FFFFFF;
-                if (rgb != 0)
-                    rgb = 0x20A0C0;
-                bm.setPixel(i,j,rgb);
+    // Loads the 332 version of a drawable resource: the copy pre-quantized at build time if
+    // there is one, else the result of an earlier run from the persistent cache, else the
+    // resource decoded and quantized now.
+    private QuantizedImage getQuantizedImage(int resId, int mode) {
+        return getQuantizedImage(resId, mode, 0);
+    }
+
+    // Same as above, scaled to be height pixels tall so it is shown at its native size. A
+    // height of 0 keeps the drawable's own size.
+    private QuantizedImage getQuantizedImage(int resId, int mode, int height) {
+        QuantizedImage image = getPreQuantizedAsset(resId, mode);
+        if (image != null && (height == 0 || image.height == height))
+            return image;
+        image = mBitmapCache.get(resId, height, AMBIENT_DISPLAY_WIDTH, mode);
+        if (image == null) {
+            Bitmap bm = decodeResource(resId);
+            if (height != 0 && bm.getHeight() != height) {
+                int width = Math.max(1, Math.round(bm.getWidth() * height
+                        / (float)bm.getHeight()));
+                Bitmap scaled = mBitmapPool.acquire(width, height);
+                new Canvas(scaled).drawBitmap(bm, null, new Rect(0, 0, width, height),
+                        new Paint(Paint.FILTER_BITMAP_FLAG));
+                mBitmapPool.release(bm);
+                bm = scaled;
             }
+            image = quantize(bm, mode);
+            mBitmapPool.release(bm);
+            mBitmapCache.put(resId, height, AMBIENT_DISPLAY_WIDTH, image);
+        }
+        return image;
+    }
+
+    // Decodes a drawable unscaled, as ARGB_8888, into a mutable pooled bitmap the quantizer
+    // can read directly. Each decode is its own startup trace stage.
+    private Bitmap decodeResource(int resId) {
+        StartupTrace.Section section = mStartupTrace.begin("decode:"
+                + getResources().getResourceEntryName(resId));
+        try {
+            return mBitmapPool.decodeResource(getResources(), resId);
+        } finally {
+            section.end();
+        }
+    }
+
+    // Returns the asset written by the preQuantizeAssets Gradle task, or null if the drawable
+    // was not pre-processed.
+    private QuantizedImage getPreQuantizedAsset(int resId, int mode) {
+        String name = PRE_QUANTIZED_ASSET_DIR + "/" + getResources().getResourceEntryName(resId)
+                + "_" + mode + ".q332";
+        StartupTrace.Section section = mStartupTrace.begin("decode:" + name);
+        try (InputStream in = new BufferedInputStream(getAssets().open(name))) {
+            return QuantizedImage.readFrom(in);
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable asset " + name, e);
+            return null;
+        } finally {
+            section.end();
         }
-        return bm;
     }
 
     private int[] rgb888To332() {
-        System.out.println("Running rgb888To332");
-        int[] map = new int[512];
-        for (int i = 0; i < 512; i++) {
-            int blue = i & 0x3;
-            double prop = blue / 3f;
-            map[i] |= (int)Math.round(255 * prop);
-
-            int green = (i >> 2) & 0x7;
-            prop = green / 7f;
-            map[i] |= (int)Math.round(255 * prop) << 8;
-
-            int red = (i >> 5) & 0x7;
-            prop = red / 7f;
-            map[i] |= (int)Math.round(255 * prop) << 16;
-
-            int alpha = i >> 8;
-            map[i] |= 0xFF000000 * alpha;
+        StartupTrace.Section section = mStartupTrace.begin("rgb888To332");
+        try {
+            return Argb1332.colorTable();
+        } finally {
+            section.end();
         }
-        return map;
     }
 
-    private List<ImageComponent> getBackgroundComponents() {
-        List<ImageComponent> components = new ArrayList<>();
-        int tickLength = 10;
-        int radiusOffset = 0;
-        int tickWidth = 5;
+    // Wraps the smallest equivalent of a finished layer in an Icon and places it within
+    // bounds, the region the whole layer would have covered.
+    private ImageComponent.Builder setEncodedImage(ImageComponent.Builder builder,
+            QuantizedImage image, RectF bounds) {
+        ComponentImageEncoder.Encoded encoded = ComponentImageEncoder.encode(image);
+        float[] b = ComponentImageEncoder.encodedBounds(encoded, image.width, image.height,
+                new float[] {bounds.left, bounds.top, bounds.right, bounds.bottom},
+                new float[4]);
+        return builder
+                .setImage(Icon.createWithBitmap(toBitmap(encoded.image)))
+                .setBounds(new RectF(b[0], b[1], b[2], b[3]));
+    }
 
-        int w = AMBIENT_DISPLAY_WIDTH + 3;
+    // A single pixel of color, stretched over the component bounds by the renderer.
+    private Icon solidImage(int color) {
+        return Icon.createWithBitmap(toBitmap(new QuantizedImage(1, 1, Argb1332.MODE_OPAQUE,
+                new int[] {color})));
+    }
+
+    private List<ImageComponent> getBackgroundComponents(ComponentIdRange ids) {
+        List<ImageComponent> components = new ArrayList<>();
 
-        Bitmap bitmap = Bitmap.createBitmap(w, w, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        canvas.drawColor(Color.BLACK);
         ImageComponent background = new ImageComponent.Builder()
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setZOrder(0)
-                .setImage(Icon.createWithBitmap(bitmap))
+                .setImage(solidImage(Color.BLACK))
                 .setBounds(new RectF(0f, 0f, 1f, 1f))
                 .build();
         components.add(background);
 
-        bitmap = Bitmap.createBitmap(w, w, Bitmap.Config.ARGB_8888);
-        canvas = new Canvas(bitmap);
-
-        Paint tickPaint = new Paint();
-        tickPaint.setStrokeWidth(tickWidth);
-        tickPaint.setAntiAlias(true);
-        tickPaint.setStyle(Paint.Style.STROKE);
-        tickPaint.setStrokeCap(Paint.Cap.ROUND);
-
-        int outerRadius = w / 2 - radiusOffset;
-        int innerRadius = outerRadius - tickLength;
-        for (int i = 60; i --> 0;) {
-            float angle = i * (float)Math.PI / 30;
-            float innerX = (float)Math.sin(angle) * innerRadius;
-            float innerY = (float)-Math.cos(angle) * innerRadius;
-            float outerX = (float)Math.sin(angle) * outerRadius;
-            float outerY = (float)-Math.cos(angle) * outerRadius;
-            if (i % 5 == 0)
-                tickPaint.setColor(Color.WHITE);
-            else
-                tickPaint.setColor(Color.GRAY);
-            canvas.drawLine(w / 2f + innerX, w / 2f + innerY, w / 2f + outerX,
-                    w / 2f + outerY, tickPaint);
+        QuantizedImage image = getTicksImage();
+        // The ring leaves the middle of the layer empty, so it is shipped as cropped tiles.
+        float[] full = {0f, 0f, 1f, 1f};
+        float[] b = new float[4];
+        for (ComponentImageEncoder.Encoded tile
+                : ComponentImageEncoder.split(image, TICK_TILES, TICK_TILES)) {
+            ComponentImageEncoder.encodedBounds(tile, image.width, image.height, full, b);
+            ImageComponent ticks = new ImageComponent.Builder()
+                    .setComponentId(ids.next())
+                    .setZOrder(3)
+                    .setImage(Icon.createWithBitmap(toBitmap(tile.image)))
+                    .setBounds(new RectF(b[0], b[1], b[2], b[3]))
+                    .build();
+            components.add(ticks);
         }
-        ImageComponent ticks = new ImageComponent.Builder()
-                .setComponentId(getNewComponentId())
-                .setZOrder(3)
-                .setImage(Icon.createWithBitmap(get332Bitmap(bitmap, false)))
-                .setBounds(new RectF(0f, 0f, 1f, 1f))
-                .build();
-        components.add(ticks);
 
         return components;
     }
 
-    private ImageComponent getSecondHandComponent() {
-        int centerDia = 10;
-        int strokeWidth = 3;
-        int tailLength = 20;
+    private QuantizedImage getTicksImage() {
+        int w = AMBIENT_DISPLAY_WIDTH + 3;
+        QuantizedImage image = mBitmapCache.get(TICKS_CACHE_KEY, AMBIENT_DISPLAY_WIDTH,
+                Argb1332.MODE_OPAQUE);
+        if (image == null) {
+            image = quantize(drawTicks(w), w, Argb1332.MODE_OPAQUE, TICKS_QUANTIZATION);
+            mBitmapCache.put(TICKS_CACHE_KEY, AMBIENT_DISPLAY_WIDTH, image);
+        }
+        return image;
+    }
+
+    // Rasterizes the ring straight into the buffer that gets quantized, so no full-screen
+    // bitmap is ever allocated for it.
+    private int[] drawTicks(int w) {
+        StartupTrace.Section section = mStartupTrace.begin("drawTicks");
+        try {
+            int tickLength = WatchFaceLayout.scale(10, w);
+            int radiusOffset = 0;
+            int tickWidth = WatchFaceLayout.scale(5, w);
+            return TickRingRasterizer.rasterize(w, radiusOffset, tickLength, tickWidth,
+                    Color.WHITE, Color.GRAY, new int[w * w]);
+        } finally {
+            section.end();
+        }
+    }
+
+    private ImageComponent getSecondHandComponent(ComponentIdRange ids) {
+        int w = AMBIENT_DISPLAY_WIDTH;
+        int[] hand = WatchFaceLayout.secondHand(w, new int[WatchFaceLayout.HAND_SIZE]);
+        int centerDia = hand[WatchFaceLayout.HAND_CENTER_DIAMETER];
+        int tailLength = hand[WatchFaceLayout.HAND_TAIL_LENGTH];
+        int secondHeight = hand[WatchFaceLayout.HAND_LENGTH];
+
+        String key = SECOND_HAND_CACHE_KEY + "_" + Integer.toHexString(mMarkerColor);
+        QuantizedImage image = mBitmapCache.get(key, AMBIENT_DISPLAY_WIDTH, Argb1332.MODE_OPAQUE);
+        if (image == null) {
+            Bitmap bm = drawSecondHand(hand, mMarkerColor);
+            image = quantize(bm, Argb1332.MODE_OPAQUE, SECOND_HAND_QUANTIZATION);
+            mBitmapPool.release(bm);
+            mBitmapCache.put(key, AMBIENT_DISPLAY_WIDTH, image);
+        }
 
+        RectF bounds = new RectF(
+                0.5f - image.width / 2f / w,
+                0.5f - (secondHeight + centerDia / 2f) / w,
+                0.5f + image.width / 2f / w,
+                0.5f + (tailLength + centerDia / 2f) / w);
 
-        int w = AMBIENT_DISPLAY_WIDTH - 2;
+        // The pivot is in watch face coordinates, so cropping the hand does not move it.
+        return setEncodedImage(new ImageComponent.Builder(
+                ImageComponent.Builder.TICKING_SECOND_HAND)
+                .setComponentId(ids.next())
+                .setZOrder(6)
+                .setDisplayModes(DISPLAY_AMBIENT | DISPLAY_INTERACTIVE), image, bounds)
+                .setPivot(new PointF(0.5f, 0.5f))
+                .build();
+    }
+
+    private Bitmap drawSecondHand(int[] hand, int color) {
+        int centerDia = hand[WatchFaceLayout.HAND_CENTER_DIAMETER];
+        int tailLength = hand[WatchFaceLayout.HAND_TAIL_LENGTH];
+        int strokeWidth = hand[WatchFaceLayout.HAND_STROKE_WIDTH];
 
         // Second hand
-        int secondHeight = (w - centerDia) / 2;
-        Bitmap secondBitmap = Bitmap.createBitmap(
+        int secondHeight = hand[WatchFaceLayout.HAND_LENGTH];
+        Bitmap secondBitmap = mBitmapPool.acquire(
                 centerDia + strokeWidth,
-                secondHeight + centerDia + tailLength,
-                Bitmap.Config.ARGB_8888);
+                secondHeight + centerDia + tailLength);
         //secondBitmap = Bitmap.createBitmap(dm.widthPixels, dm.widthPixels, Bitmap.Config.ARGB_8888);
 
         Paint secondPaint = new Paint();
         secondPaint.setStrokeWidth(strokeWidth);
         secondPaint.setAntiAlias(true);
 //        secondPaint.setStrokeCap(Paint.Cap.ROUND);
-        secondPaint.setColor(Color.RED);
+        secondPaint.setColor(color);
         secondPaint.setStyle(Paint.Style.STROKE);
 //        secondPaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
 
@@ -292,78 +431,91 @@ public class MyWatchFace extends DecompositionWatchFaceService {
                 canvas.getWidth() / 2f,
                 0,
                 secondPaint);
-
-        RectF bounds = new RectF(
-                0.5f - secondBitmap.getWidth() / 2f / w,
-                0.5f - (secondHeight + centerDia / 2f) / w,
-                0.5f + secondBitmap.getWidth() / 2f / w,
-                0.5f + (tailLength + centerDia / 2f) / w);
-
-        return new ImageComponent.Builder(
-                ImageComponent.Builder.TICKING_SECOND_HAND)
-                .setComponentId(getNewComponentId())
-                .setZOrder(6)
-                .setImage(Icon.createWithBitmap(get332Bitmap(secondBitmap, false)))
-                .setDisplayModes(DISPLAY_AMBIENT | DISPLAY_INTERACTIVE)
-                .setBounds(bounds)
-                .setPivot(new PointF(0.5f, 0.5f))
-                .build();
+        return secondBitmap;
     }
 
-    private int mCurrentComponentId = 0;
     private static int AMBIENT_DISPLAY_WIDTH;
 
-    private int getNewComponentId() {
-        return mCurrentComponentId++;
-    }
-
-    private List<WatchFaceDecomposition.Component> getDigitalComponents() {
+    // Component ID blocks, one per component graph node.
+    private static final int ID_BLOCK_DIGITAL = 0;
+    private static final int ID_BLOCK_DATE = 1;
+    private static final int ID_BLOCK_TOP_COMPLICATION = 2;
+    private static final int ID_BLOCK_BACKGROUND = 3;
+    private static final int ID_BLOCK_SECOND_HAND = 4;
+    private static final int ID_BLOCK_BOTTOM_COMPLICATION = 5;
+    private static final int ID_BLOCK_FONTS = 6;
+
+    // Digit atlases, by typeface name and glyph height in pixels.
+    private static final String FONT_ROUNDED_SEMIBOLD = "rounded_semibold";
+    private static final String FONT_ROUNDED_SEMIBOLD_SHORT = "rounded_semibold_short";
+    private static final String FONT_DAYS = "days";
+    private static final int[] BUNDLED_FONTS = {R.font.rounded_semibold, R.font.rounded_thin};
+    private static final int CLOCK_GLYPH_SIZE = 42;
+    private static final int DATE_GLYPH_SIZE = 38;
+    // Cells of the blocking strip: the "1" is shown from 10 to 12 o'clock, blanks otherwise.
+    private static final String BLOCKING_GLYPHS = "1   ";
+    private static final int DEFAULT_MARKER_COLOR = Color.RED;
+
+    // Inputs that invalidate the digit atlases.
+    private static final int FONT_ATLAS_INPUTS = ComponentGraph.INPUT_DISPLAY_WIDTH
+            | ComponentGraph.INPUT_TYPEFACE;
+
+    private static final int MAX_DECOMPOSITION_THREADS = 4;
+
+    // Share (1 / divisor) of the bitmap budget kept as pre-rendered complication strips.
+    private static final int COMPLICATION_TEXT_BUDGET_DIVISOR = 4;
+    private static final long DECOMPOSITION_THREAD_KEEP_ALIVE_S = 5;
+    private static final long SECOND_MILLIS = 1000;
+    private static final long MINUTE_MILLIS = 60 * SECOND_MILLIS;
+
+    private ExecutorService mDecompositionExecutor;
+    private ComponentGraph mComponentGraph;
+    private FontAtlasRegistry mFontAtlases;
+    private GlyphAtlasGenerator mGlyphAtlases;
+    private int mClockGlyphSize = CLOCK_GLYPH_SIZE;
+    private int mDateGlyphSize = DATE_GLYPH_SIZE;
+    private InteractiveRenderer mInteractiveRenderer;
+    private int mMarkerColor = DEFAULT_MARKER_COLOR;
+
+    private List<WatchFaceDecomposition.Component> getDigitalComponents(ComponentIdRange ids) {
         List<WatchFaceDecomposition.Component> components = new ArrayList<>();
         int w = AMBIENT_DISPLAY_WIDTH;
 
-        Bitmap bm = BitmapFactory.decodeResource(getResources(), R.drawable.rounded_semibold);
-        Icon font = Icon.createWithBitmap(get332Bitmap(bm, true));
-        FontComponent fontComponent = new FontComponent.Builder()
-                .setImage(font)
-                .setComponentId(getNewComponentId())
-                .setDigitCount(10)
-                .build();
+        FontAtlasRegistry.Atlas font = mFontAtlases.get(FONT_ROUNDED_SEMIBOLD, mClockGlyphSize,
+                Argb1332.MODE_TRANSPARENT);
+        FontComponent fontComponent = font.component;
         components.add(fontComponent);
-        Drawable fontDrawable = font.loadDrawable(getApplicationContext());
-
 
-        float minuteStartX = w / 2f - fontDrawable.getMinimumWidth() - 50;
-//        float minuteEndX = w / 2f + fontDrawable.getMinimumWidth();
-        float clockStartY = w / 2f - fontDrawable.getMinimumHeight() / 2f / 10;
-        float clockEndY = w / 2f + fontDrawable.getMinimumHeight() / 2f / 10;
+        QuantizedImage colon = getQuantizedImage(R.drawable.colon_8,
+                Argb1332.MODE_TRANSPARENT, mClockGlyphSize);
+        float[] row = WatchFaceLayout.clockRow(w, font.width, font.height / 10, colon.width,
+                new float[WatchFaceLayout.CLOCK_ROW_SIZE]);
+        float minuteStartX = row[WatchFaceLayout.CLOCK_MINUTE_X];
+        float clockStartY = row[WatchFaceLayout.CLOCK_TOP];
+        float clockEndY = row[WatchFaceLayout.CLOCK_BOTTOM];
         NumberComponent minuteDigit = new NumberComponent.Builder(NumberComponent.Builder.MINUTES)
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setFontComponent(fontComponent)
                 .setZOrder(1)
                 .setPosition(new PointF(minuteStartX / w, clockStartY / w))
                 .build();
         components.add(minuteDigit);
 
-        bm = BitmapFactory.decodeResource(getResources(), R.drawable.colon_8);
-        Icon colon = Icon.createWithBitmap(get332Bitmap(bm, true));
-        int colonWidth = colon.loadDrawable(getApplicationContext()).getMinimumWidth();
-        float leftColonStartX = minuteStartX - colonWidth;
+        float leftColonStartX = row[WatchFaceLayout.CLOCK_COLON_X];
         RectF leftColonBounds = new RectF(
                 leftColonStartX / w,
                 clockStartY / w,
                 minuteStartX / w,
                 clockEndY / w);
-        ImageComponent colonComponent = new ImageComponent.Builder()
-                .setComponentId(getNewComponentId())
-                .setZOrder(1)
-                .setImage(colon)
-                .setBounds(leftColonBounds)
+        ImageComponent colonComponent = setEncodedImage(new ImageComponent.Builder()
+                .setComponentId(ids.next())
+                .setZOrder(1), colon, leftColonBounds)
                 .build();
         components.add(colonComponent);
 
-        float hourStartX = leftColonStartX - (fontDrawable.getMinimumWidth() * 2);
+        float hourStartX = row[WatchFaceLayout.CLOCK_HOUR_X];
         NumberComponent hourDigit = new NumberComponent.Builder(NumberComponent.Builder.HOURS_12)
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setFontComponent(fontComponent)
                 .setZOrder(1)
                 .setPosition(new PointF(hourStartX / w, clockStartY / w))
@@ -371,22 +523,18 @@ public class MyWatchFace extends DecompositionWatchFaceService {
                 .build();
         components.add(hourDigit);
 
-        bm = BitmapFactory.decodeResource(getResources(), R.drawable.rounded_semibold_short);
-        Icon blockingFont = Icon.createWithBitmap(get332Bitmap(bm, false));
-        FontComponent blockingFontComponent = new FontComponent.Builder()
-                .setImage(blockingFont)
-                .setComponentId(getNewComponentId())
-                .setDigitCount(4)
-                .build();
+        FontComponent blockingFontComponent = mFontAtlases.get(FONT_ROUNDED_SEMIBOLD_SHORT,
+                mClockGlyphSize, Argb1332.MODE_OPAQUE).component;
         components.add(blockingFontComponent);
 
         NumberComponent blockingDigit = new NumberComponent.Builder(NumberComponent.Builder.HOURS_12)
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setFontComponent(blockingFontComponent)
                 .setMsPerIncrement(TimeUnit.HOURS.toMillis(3L))
                 .setTimeOffsetMs(TimeUnit.HOURS.toMillis(2L))
                 .setZOrder(2)
-                .setPosition(new PointF(hourStartX / w, clockStartY / w))
+                .setPosition(new PointF(row[WatchFaceLayout.CLOCK_BLOCKING_X] / w,
+                        clockStartY / w))
                 .setLowestValue(0L)
                 .setHighestValue(3L)
                 .build();
@@ -395,101 +543,91 @@ public class MyWatchFace extends DecompositionWatchFaceService {
         return components;
     }
 
-    public List<WatchFaceDecomposition.Component> getDateComponents() {
+    public List<WatchFaceDecomposition.Component> getDateComponents(ComponentIdRange ids) {
         List<WatchFaceDecomposition.Component> components = new ArrayList<>();
         int w = AMBIENT_DISPLAY_WIDTH;
 
-        Bitmap bm = BitmapFactory.decodeResource(getResources(), R.drawable.days_blue);
-        float yOffset = 0.5f - bm.getHeight() / 7f / 2f / w;
-        float xOffset = 0.03f;
-        Icon font = Icon.createWithBitmap(get332BlueBitmap(bm));
-        FontComponent daysFontComponent = new FontComponent.Builder()
-                .setImage(font)
-                .setComponentId(getNewComponentId())
-                .setDigitCount(7)
-                .build();
+        FontAtlasRegistry.Atlas days = mFontAtlases.get(FONT_DAYS, mDateGlyphSize,
+                Argb1332.MODE_BLUE);
+        float[] row = WatchFaceLayout.dateRow(w, days.height / 7f,
+                new float[WatchFaceLayout.DATE_ROW_SIZE]);
+        float yOffset = row[WatchFaceLayout.DATE_TOP] / w;
+        FontComponent daysFontComponent = days.component;
         components.add(daysFontComponent);
 
         NumberComponent dayComponent = new NumberComponent.Builder(NumberComponent.Builder.DAY_OF_WEEK)
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setFontComponent(daysFontComponent)
                 .setZOrder(1)
-                .setPosition(new PointF(0.49F + xOffset, yOffset))
+                .setPosition(new PointF(row[WatchFaceLayout.DATE_DAY_OF_WEEK_X] / w, yOffset))
                 .build();
         components.add(dayComponent);
 
-        bm = BitmapFactory.decodeResource(getResources(), R.drawable.rounded_semibold_38);
-        font = Icon.createWithBitmap(get332Bitmap(bm, true));
-        FontComponent smallFont = new FontComponent.Builder()
-                .setImage(font)
-                .setComponentId(getNewComponentId())
-                .setDigitCount(10)
-                .build();
+        FontComponent smallFont = mFontAtlases.get(FONT_ROUNDED_SEMIBOLD, mDateGlyphSize,
+                Argb1332.MODE_TRANSPARENT).component;
         components.add(smallFont);
 
         NumberComponent dateComponent = new NumberComponent.Builder(NumberComponent.Builder.DAY_OF_MONTH)
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setFontComponent(smallFont)
                 .setZOrder(1)
-                .setPosition(new PointF(0.75F + xOffset, yOffset))
+                .setPosition(new PointF(row[WatchFaceLayout.DATE_DAY_OF_MONTH_X] / w, yOffset))
                 .build();
         components.add(dateComponent);
 
         return components;
     }
 
-    private List<WatchFaceDecomposition.Component> getComplicationComponents() {
+    private List<WatchFaceDecomposition.Component> getComplicationComponents(int id,
+            ComponentIdRange ids) {
         List<WatchFaceDecomposition.Component> components = new ArrayList<>();
         float w = AMBIENT_DISPLAY_WIDTH;
-        int[] textSize = {23, 22};
-        int[] titleSize = {35, 25};
-        float[] width = {0.7f, 0.9f};
-        float[] top = {50 / w, 220 / w};
-        float[] height = {0.25f, 0.25f};
-        float[] center = {0.5f, 0.45f};
-
-        for (int id : COMPLICATION_IDS) {
-            ComplicationDrawable c = mComplicationDrawableSparseArray.get(id);
-            c.setBorderStyleAmbient(ComplicationDrawable.BORDER_STYLE_NONE);
-            c.setTextTypefaceAmbient(getResources().getFont(R.font.rounded_thin));
-            c.setTitleTypefaceAmbient(getResources().getFont(R.font.rounded_thin));
-            c.setTextSizeAmbient(textSize[id]);
-            c.setTitleSizeAmbient(titleSize[id]);
-
-            RectF bounds = new RectF(
-                    center[id] - width[id] / 2f,
-                    top[id] + 0,
-                    center[id] + width[id] / 2f,
-                    top[id] + height[id]);
-            ComplicationComponent cc = new ComplicationComponent.Builder()
-                    .setWatchFaceComplicationId(id)
-                    .setComplicationDrawable(c)
-                    .setComponentId(getNewComponentId())
+        float[] b = new float[4];
+
+        CachedComplicationRenderer c = mComplicationRenderers.get(id);
+        c.setBorderStyleAmbient(ComplicationDrawable.BORDER_STYLE_NONE);
+        Typeface thin = mTypefaces.get(R.font.rounded_thin);
+        c.setTextTypefaceAmbient(thin);
+        c.setTitleTypefaceAmbient(thin);
+        c.setTextSizeAmbient(WatchFaceLayout.complicationTextSize(id, w));
+        c.setTitleSizeAmbient(WatchFaceLayout.complicationTitleSize(id, w));
+
+        WatchFaceLayout.complicationBounds(id, w, b);
+        RectF bounds = new RectF(b[0], b[1], b[2], b[3]);
+        // Text that doesn't change is shown in ambient as a pre-rendered strip, so the offload
+        // renderer only lays out the live drawable for anything else.
+        QuantizedImage strip = c.getAmbientStrip(Math.round(bounds.width() * w),
+                Math.round(bounds.height() * w), System.currentTimeMillis());
+        ComplicationComponent cc = new ComplicationComponent.Builder()
+                .setWatchFaceComplicationId(id)
+                .setComplicationDrawable(c.getDrawable())
+                .setComponentId(ids.next())
+                .setZOrder(1)
+                .setDisplayModes(strip == null
+                        ? DISPLAY_AMBIENT | DISPLAY_INTERACTIVE : DISPLAY_INTERACTIVE)
+                .setComplicationTypes(COMPLICATION_SUPPORTED_TYPES[id])
+                .setBounds(bounds)
+                .build();
+        components.add(cc);
+
+        if (strip != null) {
+            ImageComponent stripComponent = setEncodedImage(new ImageComponent.Builder()
+                    .setComponentId(ids.next())
                     .setZOrder(1)
-                    .setComplicationTypes(COMPLICATION_SUPPORTED_TYPES[id])
-                    .setBounds(bounds)
+                    .setDisplayModes(DISPLAY_AMBIENT), strip, bounds)
                     .build();
-
-            components.add(cc);
+            components.add(stripComponent);
         }
 
-        int blockingWidth = 100;
-        int blockingHeight = 100;
-        Bitmap bitmap = Bitmap.createBitmap(blockingWidth, blockingHeight, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        canvas.drawColor(Color.BLACK);
-
-        RectF bounds = new RectF(
-                center[BOTTOM_COMPLICATION_ID] - width[BOTTOM_COMPLICATION_ID] / 2f,
-                top[BOTTOM_COMPLICATION_ID] + 0,
-                center[BOTTOM_COMPLICATION_ID] - width[BOTTOM_COMPLICATION_ID] / 2f + blockingWidth / w,
-                top[BOTTOM_COMPLICATION_ID] + blockingWidth / w);
+        if (id != BOTTOM_COMPLICATION_ID)
+            return components;
 
+        WatchFaceLayout.blockingBounds(BOTTOM_COMPLICATION_ID, w, b);
         ImageComponent bottomBlockingComponent = new ImageComponent.Builder()
-                .setComponentId(getNewComponentId())
+                .setComponentId(ids.next())
                 .setZOrder(2)
-                .setImage(Icon.createWithBitmap(bitmap))
-                .setBounds(bounds)
+                .setImage(solidImage(Color.BLACK))
+                .setBounds(new RectF(b[0], b[1], b[2], b[3]))
                 .build();
         components.add(bottomBlockingComponent);
 
@@ -499,27 +637,227 @@ public class MyWatchFace extends DecompositionWatchFaceService {
 
     @Override
     protected WatchFaceDecomposition buildDecomposition() {
-        List<WatchFaceDecomposition.Component> components = new ArrayList<>();
-        WatchFaceDecomposition.Builder builder = new WatchFaceDecomposition.Builder();
-
-        components.addAll(getDigitalComponents());
-        components.addAll(getDateComponents());
-        components.addAll(getComplicationComponents());
-        components.addAll(getBackgroundComponents());
-        components.add(getSecondHandComponent());
-
-        for (WatchFaceDecomposition.Component c : components) {
-            if (c instanceof ImageComponent)
-                builder.addImageComponents((ImageComponent)c);
-            else if (c instanceof FontComponent)
-                builder.addFontComponents((FontComponent)c);
-            else if (c instanceof NumberComponent)
-                builder.addNumberComponents((NumberComponent)c);
-            else if (c instanceof ComplicationComponent)
-                builder.addComplicationComponents((ComplicationComponent)c);
+        StartupTrace.Section section = mStartupTrace.begin("buildDecomposition");
+        try {
+            return buildDecomposition(ComponentGraph.INPUT_ALL);
+        } finally {
+            section.end();
+        }
+    }
+
+    // Rebuilds the parts of the decomposition that depend on changedInputs and reassembles it
+    // with the components last built for every other part.
+    private WatchFaceDecomposition buildDecomposition(int changedInputs) {
+        // Each node decodes and quantizes its own bitmaps, so run them side by side and join
+        // before building. IDs come from a fixed block per node, which keeps the result
+        // identical however the tasks are scheduled.
+        if (mComponentGraph == null)
+            mComponentGraph = createComponentGraph();
+        if ((changedInputs & ComponentGraph.INPUT_COLORS) != 0)
+            loadColors();
+        if ((changedInputs & FONT_ATLAS_INPUTS) != 0)
+            loadFontAtlases();
+        List<ComponentGraph.Node> stale = mComponentGraph.getStaleNodes(changedInputs);
+        List<Future<List<? extends WatchFaceDecomposition.Component>>> futures =
+                new ArrayList<>();
+        for (ComponentGraph.Node node : stale)
+            futures.add(submit(node.name, node));
+        for (int i = 0; i < stale.size(); i++)
+            mComponentGraph.setResult(stale.get(i), join(futures.get(i)));
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Decomposition bitmaps: " + mBitmapPool.describe());
+            Log.d(TAG, "Complication strips: " + mComplicationTextCache.describe());
+            Log.d(TAG, "Typefaces: " + mTypefaces.describe());
+        }
+        return mComponentGraph.assemble();
+    }
+
+    /*
+     * The marker color picked in the config activity colors the second hand. The background
+     * color is not applied: the face hides the bottom complication's icon and the hour tens
+     * with black masks, which only work on a black background.
+     */
+    private void loadColors() {
+        mMarkerColor = getSharedPreferences(
+                getString(R.string.analog_complication_preference_file_key),
+                Context.MODE_PRIVATE).getInt(getString(R.string.saved_marker_color),
+                DEFAULT_MARKER_COLOR);
+    }
+
+    // Loads every declared digit atlas side by side, then registers them in declaration order
+    // so shared atlases and their IDs come out the same on every run.
+    private void loadFontAtlases() {
+        if (mFontAtlases == null)
+            mFontAtlases = createFontAtlasRegistry();
+        mFontAtlases.clear();
+        List<Future<QuantizedImage>> futures = new ArrayList<>();
+        for (final FontAtlasRegistry.Spec spec : mFontAtlases.getSpecs()) {
+            futures.add(submit("loadFontAtlas:" + spec.typeface + "/" + spec.size,
+                    new Callable<QuantizedImage>() {
+                        @Override
+                        public QuantizedImage call() {
+                            if (spec.isGenerated())
+                                return mGlyphAtlases.get(spec.fontResId, spec.size, spec.mode,
+                                        spec.glyphs);
+                            return getQuantizedImage(spec.resId, spec.mode,
+                                    spec.size * spec.digitCount);
+                        }
+                    }));
+        }
+        List<QuantizedImage> images = new ArrayList<>();
+        for (Future<QuantizedImage> future : futures)
+            images.add(join(future));
+        mFontAtlases.register(images);
+    }
+
+    // Frees the Canvas renderer's copies of the assets; the next use builds a new one.
+    private void releaseInteractiveRenderer() {
+        if (mInteractiveRenderer != null) {
+            mInteractiveRenderer.release();
+            mInteractiveRenderer = null;
+        }
+    }
+
+    // Builds the Canvas renderer from the assets of the last decomposition build.
+    private InteractiveRenderer getInteractiveRenderer() {
+        if (mInteractiveRenderer == null) {
+            InteractiveRenderer renderer = new InteractiveRenderer(AMBIENT_DISPLAY_WIDTH,
+                    mComplicationRenderers, COMPLICATION_IDS, BOTTOM_COMPLICATION_ID);
+            renderer.setTicks(getTicksImage());
+            renderer.setSecondHandColor(mMarkerColor);
+            renderer.setClock(mFontAtlases.get(FONT_ROUNDED_SEMIBOLD, mClockGlyphSize,
+                    Argb1332.MODE_TRANSPARENT), getQuantizedImage(R.drawable.colon_8,
+                    Argb1332.MODE_TRANSPARENT, mClockGlyphSize));
+            renderer.setDate(mFontAtlases.get(FONT_DAYS, mDateGlyphSize, Argb1332.MODE_BLUE),
+                    mFontAtlases.get(FONT_ROUNDED_SEMIBOLD, mDateGlyphSize,
+                            Argb1332.MODE_TRANSPARENT));
+            mInteractiveRenderer = renderer;
+        }
+        return mInteractiveRenderer;
+    }
+
+    // Declares the digit atlases for the current panel. The hand-made BMP strips are used at
+    // their native size; any other size is rendered from the bundled font, or for the days,
+    // which are not digits, scaled from the strip.
+    private FontAtlasRegistry createFontAtlasRegistry() {
+        List<FontAtlasRegistry.Spec> specs = new ArrayList<>();
+        specs.add(mClockGlyphSize == CLOCK_GLYPH_SIZE
+                ? FontAtlasRegistry.Spec.fromDrawable(FONT_ROUNDED_SEMIBOLD, CLOCK_GLYPH_SIZE,
+                        Argb1332.MODE_TRANSPARENT, 10, R.drawable.rounded_semibold)
+                : FontAtlasRegistry.Spec.fromFont(FONT_ROUNDED_SEMIBOLD, mClockGlyphSize,
+                        Argb1332.MODE_TRANSPARENT, R.font.rounded_semibold));
+        // The blocking strip covers the hour tens, so it must match the clock atlas cell.
+        specs.add(mClockGlyphSize == CLOCK_GLYPH_SIZE
+                ? FontAtlasRegistry.Spec.fromDrawable(FONT_ROUNDED_SEMIBOLD_SHORT,
+                        CLOCK_GLYPH_SIZE, Argb1332.MODE_OPAQUE, 4,
+                        R.drawable.rounded_semibold_short)
+                : FontAtlasRegistry.Spec.fromFont(FONT_ROUNDED_SEMIBOLD_SHORT, mClockGlyphSize,
+                        Argb1332.MODE_OPAQUE, R.font.rounded_semibold, BLOCKING_GLYPHS));
+        specs.add(FontAtlasRegistry.Spec.fromDrawable(FONT_DAYS, mDateGlyphSize,
+                Argb1332.MODE_BLUE, 7, R.drawable.days_blue));
+        specs.add(mDateGlyphSize == DATE_GLYPH_SIZE
+                ? FontAtlasRegistry.Spec.fromDrawable(FONT_ROUNDED_SEMIBOLD, DATE_GLYPH_SIZE,
+                        Argb1332.MODE_TRANSPARENT, 10, R.drawable.rounded_semibold_38)
+                : FontAtlasRegistry.Spec.fromFont(FONT_ROUNDED_SEMIBOLD, mDateGlyphSize,
+                        Argb1332.MODE_TRANSPARENT, R.font.rounded_semibold));
+        return new FontAtlasRegistry(ID_BLOCK_FONTS, specs, mBitmapPool, mStartupTrace);
+    }
+
+    private ComponentGraph createComponentGraph() {
+        ComponentGraph graph = new ComponentGraph();
+        graph.add(new ComponentGraph.Node("getDigitalComponents", ID_BLOCK_DIGITAL,
+                ComponentGraph.INPUT_DISPLAY_WIDTH | ComponentGraph.INPUT_TYPEFACE) {
+            @Override
+            public List<? extends WatchFaceDecomposition.Component> build(ComponentIdRange ids) {
+                return getDigitalComponents(ids);
+            }
+        });
+        graph.add(new ComponentGraph.Node("getDateComponents", ID_BLOCK_DATE,
+                ComponentGraph.INPUT_DISPLAY_WIDTH | ComponentGraph.INPUT_TYPEFACE
+                        | ComponentGraph.INPUT_LOCALE) {
+            @Override
+            public List<? extends WatchFaceDecomposition.Component> build(ComponentIdRange ids) {
+                return getDateComponents(ids);
+            }
+        });
+        graph.add(new ComponentGraph.Node("getTopComplicationComponents",
+                ID_BLOCK_TOP_COMPLICATION,
+                ComponentGraph.INPUT_DISPLAY_WIDTH | ComponentGraph.INPUT_TYPEFACE
+                        | ComponentGraph.INPUT_TOP_COMPLICATION) {
+            @Override
+            public List<? extends WatchFaceDecomposition.Component> build(ComponentIdRange ids) {
+                return getComplicationComponents(TOP_COMPLICATION_ID, ids);
+            }
+        });
+        graph.add(new ComponentGraph.Node("getBottomComplicationComponents",
+                ID_BLOCK_BOTTOM_COMPLICATION,
+                ComponentGraph.INPUT_DISPLAY_WIDTH | ComponentGraph.INPUT_TYPEFACE
+                        | ComponentGraph.INPUT_BOTTOM_COMPLICATION) {
+            @Override
+            public List<? extends WatchFaceDecomposition.Component> build(ComponentIdRange ids) {
+                return getComplicationComponents(BOTTOM_COMPLICATION_ID, ids);
+            }
+        });
+        graph.add(new ComponentGraph.Node("getBackgroundComponents", ID_BLOCK_BACKGROUND,
+                ComponentGraph.INPUT_DISPLAY_WIDTH) {
+            @Override
+            public List<? extends WatchFaceDecomposition.Component> build(ComponentIdRange ids) {
+                return getBackgroundComponents(ids);
+            }
+        });
+        // Not needed for the first frame; built right after it or on entering ambient.
+        graph.add(new ComponentGraph.Node("getSecondHandComponent", ID_BLOCK_SECOND_HAND,
+                ComponentGraph.INPUT_DISPLAY_WIDTH | ComponentGraph.INPUT_COLORS, true) {
+            @Override
+            public List<? extends WatchFaceDecomposition.Component> build(ComponentIdRange ids) {
+                return Collections.singletonList(getSecondHandComponent(ids));
+            }
+        });
+        return graph;
+    }
+
+    // Runs a factory on the decomposition pool inside a startup trace section.
+    private <T> Future<T> submit(final String name, final Callable<T> task) {
+        if (mDecompositionExecutor == null) {
+            int threads = Math.max(1, Math.min(MAX_DECOMPOSITION_THREADS,
+                    Runtime.getRuntime().availableProcessors()));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    DECOMPOSITION_THREAD_KEEP_ALIVE_S, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+            // Let the pool drain to zero threads once the decomposition is built.
+            executor.allowCoreThreadTimeOut(true);
+            mDecompositionExecutor = executor;
         }
+        return mDecompositionExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                StartupTrace.Section section = mStartupTrace.begin(name);
+                mBitmapPool.beginOwner(name);
+                try {
+                    return task.call();
+                } finally {
+                    mBitmapPool.endOwner();
+                    section.end();
+                }
+            }
+        });
+    }
 
-        return builder.build();
+    private static <T> T join(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building decomposition", e);
+        }
     }
 
     @Override
@@ -534,15 +872,108 @@ public class MyWatchFace extends DecompositionWatchFaceService {
 //                        Context.MODE_PRIVATE);
 
         mCalendar = Calendar.getInstance();
-
+        mStartupTrace = new StartupTrace(isDebuggable());
+        registerTraceDumpReceiver();
+        registerRendererReceiver();
+        mBitmapCache = new DecompositionBitmapCache(getApplicationContext());
+        mBitmapPool = new DecompositionBitmapPool(getBitmapBudget());
+        mTypefaces = TypefaceRegistry.getInstance(this);
+        preloadTypefaces();
+        mGlyphAtlases = new GlyphAtlasGenerator(getResources(), mTypefaces, mBitmapCache,
+                mBitmapPool);
+
+        StartupTrace.Section section = mStartupTrace.begin("initializeComplicationsAndBackground");
         initializeComplicationsAndBackground();
+        section.end();
+        section = mStartupTrace.begin("initializeWatchFace");
         initializeWatchFace();
+        section.end();
 //        initializeBackground();
 //        updateWatchHandStyle();
 
         return new Engine();
     }
 
+    // Parses the bundled fonts on the decomposition pool while the engine is being set up.
+    private void preloadTypefaces() {
+        for (final int fontResId : BUNDLED_FONTS) {
+            submit("loadTypeface:" + getResources().getResourceEntryName(fontResId),
+                    new Callable<Typeface>() {
+                        @Override
+                        public Typeface call() {
+                            return mTypefaces.get(fontResId);
+                        }
+                    });
+        }
+    }
+
+    // Share of the app heap the decomposition bitmaps may use, smaller on low-RAM watches.
+    private long getBitmapBudget() {
+        ActivityManager am = (ActivityManager)getSystemService(ACTIVITY_SERVICE);
+        long heap = am.getMemoryClass() * 1024L * 1024L;
+        return heap / getResources().getInteger(am.isLowRamDevice()
+                ? R.integer.bitmap_budget_heap_divisor_low_ram
+                : R.integer.bitmap_budget_heap_divisor);
+    }
+
+    @Override
+    public void onDestroy() {
+        releaseInteractiveRenderer();
+        if (mBitmapPool != null)
+            mBitmapPool.clear();
+        if (mComplicationTextCache != null)
+            mComplicationTextCache.clear();
+        if (mTraceDumpReceiver != null) {
+            unregisterReceiver(mTraceDumpReceiver);
+            mTraceDumpReceiver = null;
+        }
+        if (mRendererReceiver != null) {
+            unregisterReceiver(mRendererReceiver);
+            mRendererReceiver = null;
+        }
+        super.onDestroy();
+    }
+
+    private boolean isDebuggable() {
+        return (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+    }
+
+    // Lets a debuggable build dump the startup trace with
+    // adb shell am broadcast -a com.vitataf.watchface.DUMP_STARTUP_TRACE
+    private void registerTraceDumpReceiver() {
+        if (!isDebuggable() || mTraceDumpReceiver != null)
+            return;
+        mTraceDumpReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                String dump = mStartupTrace.dump() + "\nSuppressed complication redraws: "
+                        + mSuppressedComplicationRedraws;
+                Log.i(TAG, dump);
+                setResultData(dump);
+            }
+        };
+        registerReceiver(mTraceDumpReceiver, new IntentFilter(StartupTrace.ACTION_DUMP));
+    }
+
+    // Lets a debuggable build switch the interactive renderer with
+    // adb shell am broadcast -a com.vitataf.watchface.SET_INTERACTIVE_RENDERER --ez canvas true
+    private void registerRendererReceiver() {
+        if (!isDebuggable() || mRendererReceiver != null)
+            return;
+        mRendererReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                getSharedPreferences(getString(R.string.analog_complication_preference_file_key),
+                        Context.MODE_PRIVATE).edit()
+                        .putBoolean(getString(R.string.saved_canvas_renderer),
+                                intent.getBooleanExtra(InteractiveRenderer.EXTRA_CANVAS, false))
+                        .apply();
+            }
+        };
+        registerReceiver(mRendererReceiver,
+                new IntentFilter(InteractiveRenderer.ACTION_SET_RENDERER));
+    }
+
 //    private static class EngineHandler extends Handler {
 //        private final WeakReference<MyWatchFace.Engine> mWeakReference;
 //
@@ -569,15 +1000,17 @@ public class MyWatchFace extends DecompositionWatchFaceService {
         // Creates a ComplicationDrawable for each location where the user can render a
         // complication on the watch face. In this watch face, we create one for left, right,
         // and background, but you could add many more.
-        ComplicationDrawable topComplicationDrawable =
-                new ComplicationDrawable(getApplicationContext());
-        ComplicationDrawable bottomComplicationDrawable =
-                new ComplicationDrawable(getApplicationContext());
+        mComplicationTextCache = new ComplicationTextCache(
+                (int)(getBitmapBudget() / COMPLICATION_TEXT_BUDGET_DIVISOR));
+        CachedComplicationRenderer topComplication = new CachedComplicationRenderer(
+                getApplicationContext(), TOP_COMPLICATION_ID, mComplicationTextCache);
+        CachedComplicationRenderer bottomComplication = new CachedComplicationRenderer(
+                getApplicationContext(), BOTTOM_COMPLICATION_ID, mComplicationTextCache);
 
-        mComplicationDrawableSparseArray = new SparseArray<>(COMPLICATION_IDS.length);
+        mComplicationRenderers = new SparseArray<>(COMPLICATION_IDS.length);
 
-        mComplicationDrawableSparseArray.put(TOP_COMPLICATION_ID, topComplicationDrawable);
-        mComplicationDrawableSparseArray.put(BOTTOM_COMPLICATION_ID, bottomComplicationDrawable);
+        mComplicationRenderers.put(TOP_COMPLICATION_ID, topComplication);
+        mComplicationRenderers.put(BOTTOM_COMPLICATION_ID, bottomComplication);
         /*
         topComplicationDrawable.setBorderColorAmbient(Color.RED);
         topComplicationDrawable.setBorderColorActive(Color.RED);
@@ -682,8 +1115,10 @@ public class MyWatchFace extends DecompositionWatchFaceService {
 //        mTickAndCirclePaint.setShadowLayer(SHADOW_RADIUS, 0, 0, mWatchHandShadowColor);
 
         DisplayMetrics dm = getApplication().getResources().getDisplayMetrics();
-        int AMBIENT_OFFSET = 12;
-        AMBIENT_DISPLAY_WIDTH = dm.widthPixels - AMBIENT_OFFSET;
+        AMBIENT_DISPLAY_WIDTH = WatchFaceLayout.ambientWidth(dm.widthPixels);
+        mClockGlyphSize = WatchFaceLayout.scale(CLOCK_GLYPH_SIZE, AMBIENT_DISPLAY_WIDTH);
+        mDateGlyphSize = WatchFaceLayout.scale(DATE_GLYPH_SIZE, AMBIENT_DISPLAY_WIDTH);
+        mFontAtlases = null;
 
 //        /*
 //         * Find the coordinates of the center point on the screen, and ignore the window
@@ -792,6 +1227,11 @@ public class MyWatchFace extends DecompositionWatchFaceService {
 
     private Calendar mCalendar;
     private boolean mRegisteredTimeZoneReceiver = false;
+    private StartupTrace mStartupTrace;
+    private BroadcastReceiver mTraceDumpReceiver;
+    private BroadcastReceiver mRendererReceiver;
+    /* Complication updates dropped because they would have drawn the same thing. */
+    private int mSuppressedComplicationRedraws;
 //    private boolean mMuteMode;
 //    private float mCenterX;
 //    private float mCenterY;
@@ -814,10 +1254,10 @@ public class MyWatchFace extends DecompositionWatchFaceService {
 //    private boolean mBurnInProtection;
 
 
-    /* Maps complication ids to corresponding ComplicationDrawable that renders the
-     * the complication data on the watch face.
+    /* Maps complication ids to the wrapper of the ComplicationDrawable that renders the
+     * complication data on the watch face.
      */
-    private SparseArray<ComplicationDrawable> mComplicationDrawableSparseArray;
+    private SparseArray<CachedComplicationRenderer> mComplicationRenderers;
 
     // Used to pull user's preferences for background color, highlight color, and visual
     // indicating there are unread notifications.
@@ -836,6 +1276,119 @@ public class MyWatchFace extends DecompositionWatchFaceService {
             }
         };
 
+        private final BroadcastReceiver mLocaleReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                rebuildDecomposition(ComponentGraph.INPUT_LOCALE);
+            }
+        };
+
+        private final SharedPreferences.OnSharedPreferenceChangeListener mPreferenceListener =
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+            @Override
+            public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                if (getString(R.string.saved_marker_color).equals(key))
+                    rebuildDecomposition(ComponentGraph.INPUT_COLORS);
+                else if (getString(R.string.saved_canvas_renderer).equals(key))
+                    setCanvasRenderer(prefs.getBoolean(key, false));
+            }
+        };
+
+        private SharedPreferences mSharedPref;
+        /* Draw interactive frames with InteractiveRenderer instead of the decomposition. */
+        private boolean mCanvasRenderer;
+
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+        private final Runnable mMaterializeLazyComponents = new Runnable() {
+            @Override
+            public void run() {
+                materializeLazyComponents();
+            }
+        };
+
+        /* Last complication type seen per id, to spot a change of provider. */
+        private final SparseIntArray mComplicationTypes = new SparseIntArray();
+
+        /* Latest data per complication ID not yet applied, and fingerprints of the applied. */
+        private final SparseArray<ComplicationData> mPendingComplicationData =
+                new SparseArray<>();
+        private final SparseLongArray mComplicationFingerprints =
+                new SparseLongArray(COMPLICATION_IDS.length);
+        private final Runnable mFlushComplicationData = new Runnable() {
+            @Override
+            public void run() {
+                flushComplicationData();
+            }
+        };
+        private final SparseArray<ComplicationData> mShownComplicationData =
+                new SparseArray<>();
+        private final Runnable mComplicationChanged = new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        };
+        /* Next frame of the Canvas renderer, whose second hand ticks on whole seconds. */
+        private final Runnable mSecondTick = new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        };
+        private long mComplicationUpdateWindowMs;
+        private long mLastComplicationFlush;
+        private boolean mComplicationFlushScheduled;
+
+        @Override
+        public void onCreate(SurfaceHolder holder) {
+            super.onCreate(holder);
+            MyWatchFace.this.registerReceiver(mLocaleReceiver,
+                    new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+            mSharedPref = getSharedPreferences(
+                    getString(R.string.analog_complication_preference_file_key),
+                    Context.MODE_PRIVATE);
+            mSharedPref.registerOnSharedPreferenceChangeListener(mPreferenceListener);
+            mCanvasRenderer = mSharedPref.getBoolean(getString(R.string.saved_canvas_renderer),
+                    false);
+            mComplicationUpdateWindowMs =
+                    getResources().getInteger(R.integer.complication_update_window_ms);
+        }
+
+        @Override
+        public void onDestroy() {
+            mHandler.removeCallbacks(mMaterializeLazyComponents);
+            mHandler.removeCallbacks(mFlushComplicationData);
+            mHandler.removeCallbacks(mComplicationChanged);
+            mHandler.removeCallbacks(mSecondTick);
+            mSharedPref.unregisterOnSharedPreferenceChangeListener(mPreferenceListener);
+            MyWatchFace.this.unregisterReceiver(mLocaleReceiver);
+            super.onDestroy();
+        }
+
+        /*
+         * Rebuilds only the components that depend on changedInputs and hands the result to
+         * the offload renderer.
+         */
+        private void rebuildDecomposition(int changedInputs) {
+            updateDecomposition(buildDecomposition(changedInputs));
+            // The Canvas renderer holds copies of the assets, so take them again on next use.
+            releaseInteractiveRenderer();
+        }
+
+        private void setCanvasRenderer(boolean canvasRenderer) {
+            mCanvasRenderer = canvasRenderer;
+            if (!canvasRenderer)
+                releaseInteractiveRenderer();
+            invalidate();
+        }
+
+        /* Builds the lazy components and adds them to the decomposition, once. */
+        private void materializeLazyComponents() {
+            mHandler.removeCallbacks(mMaterializeLazyComponents);
+            if (mComponentGraph != null && mComponentGraph.materializeLazyNodes())
+                rebuildDecomposition(0);
+        }
+
 //        @Override
 //        public void onCreate(SurfaceHolder holder) {
 //            super.onCreate(holder);
@@ -924,9 +1477,118 @@ public class MyWatchFace extends DecompositionWatchFaceService {
 //            invalidate();*/
 //        }
 
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
+            mHandler.removeCallbacks(mSecondTick);
+            if (mCanvasRenderer && !isInAmbientMode()) {
+                long now = System.currentTimeMillis();
+                mCalendar.setTimeInMillis(now);
+                getInteractiveRenderer().draw(canvas, bounds, mCalendar);
+                // Only the second hand moves within a minute, so draw again when it ticks.
+                if (isVisible())
+                    mHandler.postDelayed(mSecondTick, SECOND_MILLIS - now % SECOND_MILLIS);
+            } else {
+                super.onDraw(canvas, bounds);
+            }
+            if (isInAmbientMode())
+                scheduleComplicationChange(System.currentTimeMillis());
+            if (!mStartupTrace.markFirstFrame())
+                return;
+            if (isInAmbientMode())
+                materializeLazyComponents();
+            else
+                mHandler.post(mMaterializeLazyComponents);
+        }
+
+        @Override
+        public void onAmbientModeChanged(boolean inAmbientMode) {
+            // Ambient frames come from the decomposition, so it must be complete by then.
+            if (inAmbientMode) {
+                mHandler.removeCallbacks(mSecondTick);
+                materializeLazyComponents();
+            } else {
+                mHandler.removeCallbacks(mComplicationChanged);
+            }
+            super.onAmbientModeChanged(inAmbientMode);
+        }
+
+        /*
+         * Updates are applied at most once per window: only the latest data per ID is kept
+         * until then, so a provider pushing in bursts costs one redraw per window.
+         */
+        @Override
+        public void onComplicationDataUpdate(int complicationId,
+                ComplicationData complicationData) {
+            mPendingComplicationData.put(complicationId, complicationData);
+            if (mComplicationFlushScheduled)
+                return;
+            mComplicationFlushScheduled = true;
+            long delay = mLastComplicationFlush + mComplicationUpdateWindowMs
+                    - SystemClock.uptimeMillis();
+            mHandler.postDelayed(mFlushComplicationData, Math.max(0, delay));
+        }
+
+        private void flushComplicationData() {
+            mComplicationFlushScheduled = false;
+            mLastComplicationFlush = SystemClock.uptimeMillis();
+            int changedInputs = 0;
+            for (int i = 0; i < mPendingComplicationData.size(); i++) {
+                int id = mPendingComplicationData.keyAt(i);
+                ComplicationData data = mPendingComplicationData.valueAt(i);
+                long now = System.currentTimeMillis();
+                long fingerprint = ComplicationFingerprint.of(data, getApplicationContext(), now);
+                int shown = mComplicationFingerprints.indexOfKey(id);
+                if (shown >= 0 && mComplicationFingerprints.valueAt(shown) == fingerprint) {
+                    mSuppressedComplicationRedraws++;
+                    if (Log.isLoggable(TAG, Log.DEBUG))
+                        Log.d(TAG, "Unchanged complication " + id + ", "
+                                + mSuppressedComplicationRedraws + " redraws suppressed");
+                    continue;
+                }
+                mComplicationFingerprints.put(id, fingerprint);
+                mShownComplicationData.put(id, data);
+                super.onComplicationDataUpdate(id, data);
+                CachedComplicationRenderer renderer = mComplicationRenderers.get(id);
+                boolean hadStrip = renderer.hasAmbientStrip(now);
+                renderer.setComplicationData(data);
+
+                // A new type means the user picked a different provider (or none), and an
+                // ambient strip is a picture of the data; both only affect the components of
+                // that slot.
+                int type = data.getType();
+                int previous = mComplicationTypes.get(id, type);
+                mComplicationTypes.put(id, type);
+                if (previous != type || hadStrip || renderer.hasAmbientStrip(now))
+                    changedInputs |= id == TOP_COMPLICATION_ID
+                            ? ComponentGraph.INPUT_TOP_COMPLICATION
+                            : ComponentGraph.INPUT_BOTTOM_COMPLICATION;
+            }
+            mPendingComplicationData.clear();
+            if (changedInputs != 0)
+                rebuildDecomposition(changedInputs);
+            if (isInAmbientMode())
+                scheduleComplicationChange(System.currentTimeMillis());
+        }
+
+        /*
+         * Finds when a complication next draws differently. Minute boundaries get a frame from
+         * onTimeTick anyway, so only a change before the next one is given its own frame.
+         */
+        private void scheduleComplicationChange(long now) {
+            long next = ComplicationChangeScheduler.NEVER;
+            for (int i = 0; i < mShownComplicationData.size(); i++)
+                next = Math.min(next, ComplicationChangeScheduler.nextChange(
+                        mShownComplicationData.valueAt(i), now));
+            mHandler.removeCallbacks(mComplicationChanged);
+            long nextMinute = (now / MINUTE_MILLIS + 1) * MINUTE_MILLIS;
+            if (next < nextMinute)
+                mHandler.postDelayed(mComplicationChanged, next - now);
+        }
+
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            // Ticks come once a minute, and the clock shows a new minute on every one of them.
             invalidate();
         }
 //
@@ -1224,6 +1886,7 @@ public class MyWatchFace extends DecompositionWatchFaceService {
                 mCalendar.setTimeZone(TimeZone.getDefault());
                 invalidate();
             } else {
+                mHandler.removeCallbacks(mSecondTick);
                 unregisterReceiver();
             }
 
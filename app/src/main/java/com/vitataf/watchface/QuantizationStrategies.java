@@ -0,0 +1,154 @@
+package com.vitataf.watchface;
+
+import java.util.Arrays;
+
+/**
+ * The available {@link QuantizationStrategy}s, from cheapest to smoothest.
+ * <p>
+ * Truncation is what the watch face always did and is kept for the hand-made font strips,
+ * whose pixels are already on the 332 levels. The dithering strategies trade CPU for smoother
+ * anti-aliased edges on drawn layers such as the ticks and the second hand. As 332 keeps a
+ * single alpha bit, they first composite each pixel onto black, so that edge coverage ends up
+ * in the color channels where it can be rounded or dithered; only fully transparent pixels
+ * stay transparent.
+ */
+public final class QuantizationStrategies {
+
+    /** Drops the low bits of each channel. */
+    public static final QuantizationStrategy TRUNCATE = new Truncate();
+    /** Picks the nearest 332 level of each channel. */
+    public static final QuantizationStrategy ROUND = new Round();
+    /** 4x4 Bayer ordered dither. */
+    public static final QuantizationStrategy BAYER = new Bayer();
+    /** Floyd-Steinberg error diffusion. */
+    public static final QuantizationStrategy FLOYD_STEINBERG = new FloydSteinberg();
+
+    // Levels per channel minus one.
+    private static final int RED_MAX = 7;
+    private static final int GREEN_MAX = 7;
+    private static final int BLUE_MAX = 3;
+
+    private static final int[] BAYER_4X4 = {
+            0, 8, 2, 10,
+            12, 4, 14, 6,
+            3, 11, 1, 9,
+            15, 7, 13, 5
+    };
+
+    private QuantizationStrategies() {
+    }
+
+    private static int index(int alpha, int red, int green, int blue) {
+        return (alpha << 8) | (red << 5) | (green << 2) | blue;
+    }
+
+    private static int alphaBit(int color, boolean transparent) {
+        return transparent ? 0 : color >>> 31;
+    }
+
+    // Composites color onto black: partly covered pixels become opaque and darker.
+    private static int overBlack(int color) {
+        int a = color >>> 24;
+        if (a == 0xFF)
+            return color;
+        if (a == 0)
+            return 0;
+        int red = ((color >> 16) & 0xFF) * a / 0xFF;
+        int green = ((color >> 8) & 0xFF) * a / 0xFF;
+        int blue = (color & 0xFF) * a / 0xFF;
+        return 0xFF000000 | (red << 16) | (green << 8) | blue;
+    }
+
+    private static int round(int value, int max) {
+        return (value * max + 127) / 255;
+    }
+
+    private static class Truncate implements QuantizationStrategy {
+        @Override
+        public int[] quantize(int[] pixels, int width, int[] table, boolean transparent) {
+            return Argb1332.quantize(pixels, pixels, table, transparent);
+        }
+    }
+
+    private static class Round implements QuantizationStrategy {
+        @Override
+        public int[] quantize(int[] pixels, int width, int[] table, boolean transparent) {
+            for (int i = 0, n = pixels.length; i < n; i++) {
+                int color = overBlack(pixels[i]);
+                pixels[i] = table[index(alphaBit(color, transparent),
+                        round((color >> 16) & 0xFF, RED_MAX),
+                        round((color >> 8) & 0xFF, GREEN_MAX),
+                        round(color & 0xFF, BLUE_MAX))];
+            }
+            return pixels;
+        }
+    }
+
+    private static class Bayer implements QuantizationStrategy {
+        // level = floor(value * max / 255 + (2 * threshold + 1) / 32)
+        private static int dither(int value, int max, int threshold) {
+            return (value * max * 32 + (2 * threshold + 1) * 255) / (255 * 32);
+        }
+
+        @Override
+        public int[] quantize(int[] pixels, int width, int[] table, boolean transparent) {
+            int height = pixels.length / width;
+            for (int y = 0; y < height; y++) {
+                int row = (y & 3) << 2;
+                for (int x = 0, i = y * width; x < width; x++, i++) {
+                    int color = overBlack(pixels[i]);
+                    int t = BAYER_4X4[row | (x & 3)];
+                    pixels[i] = table[index(alphaBit(color, transparent),
+                            dither((color >> 16) & 0xFF, RED_MAX, t),
+                            dither((color >> 8) & 0xFF, GREEN_MAX, t),
+                            dither(color & 0xFF, BLUE_MAX, t))];
+                }
+            }
+            return pixels;
+        }
+    }
+
+    private static class FloydSteinberg implements QuantizationStrategy {
+        private static int clamp(int value) {
+            return value < 0 ? 0 : value > 255 ? 255 : value;
+        }
+
+        @Override
+        public int[] quantize(int[] pixels, int width, int[] table, boolean transparent) {
+            // Accumulated error in 1/16ths for the current and the next row, three channels per
+            // pixel and one pixel of padding on each side.
+            int stride = (width + 2) * 3;
+            int[] current = new int[stride];
+            int[] next = new int[stride];
+            int height = pixels.length / width;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int i = y * width + x;
+                    int e = (x + 1) * 3;
+                    int color = overBlack(pixels[i]);
+                    int red = clamp(((color >> 16) & 0xFF) + current[e] / 16);
+                    int green = clamp(((color >> 8) & 0xFF) + current[e + 1] / 16);
+                    int blue = clamp((color & 0xFF) + current[e + 2] / 16);
+                    int q = table[index(alphaBit(color, transparent), round(red, RED_MAX),
+                            round(green, GREEN_MAX), round(blue, BLUE_MAX))];
+                    pixels[i] = q;
+                    diffuse(current, next, e, red - ((q >> 16) & 0xFF));
+                    diffuse(current, next, e + 1, green - ((q >> 8) & 0xFF));
+                    diffuse(current, next, e + 2, blue - (q & 0xFF));
+                }
+                int[] swap = current;
+                current = next;
+                next = swap;
+                Arrays.fill(next, 0);
+            }
+            return pixels;
+        }
+
+        private static void diffuse(int[] current, int[] next, int e, int error) {
+            current[e + 3] += error * 7;
+            next[e - 3] += error * 3;
+            next[e] += error * 5;
+            next[e + 3] += error;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.vitataf.watchface;
+
+/**
+ * Reduces ARGB_8888 pixels to the ARGB_1332 color space. Implementations work in place on
+ * row-major packed ARGB ints and must not allocate per pixel.
+ *
+ * @see QuantizationStrategies
+ */
+public interface QuantizationStrategy {
+
+    /**
+     * Quantizes {@code pixels}, an image {@code width} pixels wide, in place.
+     *
+     * @param table       the table returned by {@link Argb1332#colorTable()}
+     * @param transparent when true the alpha bit is dropped, leaving every pixel transparent
+     * @return {@code pixels}
+     */
+    int[] quantize(int[] pixels, int width, int[] table, boolean transparent);
+}
@@ -0,0 +1,77 @@
+package com.vitataf.watchface;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A finished 332 image and its compact binary form.
+ * <p>
+ * The format is a "Q332" magic, a format version, the quantization mode, the width and height,
+ * followed by the row-major ARGB pixels deflated. Quantized layers use only a handful of
+ * distinct colors, so they compress to a small fraction of the raw buffer.
+ */
+public final class QuantizedImage {
+
+    private static final int MAGIC = 0x51333332; // "Q332"
+    private static final int FORMAT_VERSION = 1;
+
+    public final int width;
+    public final int height;
+    public final int mode;
+    public final int[] pixels;
+
+    public QuantizedImage(int width, int height, int mode, int[] pixels) {
+        if (pixels.length != width * height)
+            throw new IllegalArgumentException("Expected " + width * height + " pixels, got "
+                    + pixels.length);
+        this.width = width;
+        this.height = height;
+        this.mode = mode;
+        this.pixels = pixels;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(FORMAT_VERSION);
+        header.writeByte(mode);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.flush();
+
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        DataOutputStream body = new DataOutputStream(new BufferedOutputStream(deflater));
+        for (int pixel : pixels)
+            body.writeInt(pixel);
+        body.flush();
+        deflater.finish();
+    }
+
+    public static QuantizedImage readFrom(InputStream in) throws IOException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC)
+            throw new IOException("Not a 332 image");
+        int version = header.readUnsignedByte();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported 332 image version " + version);
+        int mode = header.readUnsignedByte();
+        int width = header.readInt();
+        int height = header.readInt();
+        if (width <= 0 || height <= 0)
+            throw new IOException("Bad 332 image size " + width + "x" + height);
+
+        DataInputStream body = new DataInputStream(
+                new BufferedInputStream(new InflaterInputStream(in)));
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++)
+            pixels[i] = body.readInt();
+        return new QuantizedImage(width, height, mode, pixels);
+    }
+}
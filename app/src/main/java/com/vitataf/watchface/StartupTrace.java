@@ -0,0 +1,170 @@
+package com.vitataf.watchface;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+
+/**
+ * Lightweight instrumentation for watch face initialization.
+ * <p>
+ * Each stage is wrapped in a {@link Section}, which shows up as a systrace section and records
+ * wall time, allocations made by the calling thread and the bytes of bitmaps produced on that
+ * thread while it was open. {@link #dump()} renders everything recorded so far as JSON.
+ * <p>
+ * Only an enabled trace (debuggable builds) counts allocations and keeps records, and it keeps
+ * at most {@link #MAX_RECORDS}, dropping the oldest. A disabled trace still emits the systrace
+ * sections and tracks the first frame.
+ */
+public class StartupTrace {
+
+    /** Broadcast action that makes the watch face log and return {@link #dump()}. */
+    public static final String ACTION_DUMP = "com.vitataf.watchface.DUMP_STARTUP_TRACE";
+
+    public static final int MAX_RECORDS = 512;
+
+    private final long mStartNanos = SystemClock.elapsedRealtimeNanos();
+    private final ArrayDeque<Record> mRecords = new ArrayDeque<>();
+    private final ThreadLocal<Section> mCurrent = new ThreadLocal<>();
+    private final boolean mEnabled;
+    private long mFirstFrameNanos = -1;
+    private boolean mCountingAllocations;
+
+    @SuppressWarnings("deprecation")
+    public StartupTrace(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled)
+            return;
+        // Thread allocation counters are only maintained while counting is on.
+        Debug.startAllocCounting();
+        mCountingAllocations = true;
+    }
+
+    /**
+     * Opens a section on the calling thread. Sections must be ended on the same thread in the
+     * reverse order they were opened.
+     */
+    public Section begin(String name) {
+        Section section = new Section(name, mCurrent.get());
+        mCurrent.set(section);
+        return section;
+    }
+
+    /**
+     * Attributes the bytes of {@code bitmap} to the innermost open section on this thread and,
+     * when it ends, to its enclosing sections.
+     */
+    public void recordBitmap(Bitmap bitmap) {
+        Section section = mCurrent.get();
+        if (section != null)
+            section.mBitmapBytes += bitmap.getAllocationByteCount();
+    }
+
+    /**
+     * Records the time of the first frame and stops allocation counting. Later calls are
+     * ignored.
+     *
+     * @return true for the call that marked the first frame
+     */
+    @SuppressWarnings("deprecation")
+    public synchronized boolean markFirstFrame() {
+        if (mFirstFrameNanos >= 0)
+            return false;
+        mFirstFrameNanos = SystemClock.elapsedRealtimeNanos() - mStartNanos;
+        if (mCountingAllocations) {
+            Debug.stopAllocCounting();
+            mCountingAllocations = false;
+        }
+        return true;
+    }
+
+    public synchronized String dump() {
+        try {
+            JSONObject root = new JSONObject();
+            root.put("firstFrameMs", mFirstFrameNanos < 0 ? JSONObject.NULL
+                    : mFirstFrameNanos / 1e6);
+            JSONArray stages = new JSONArray();
+            for (Record r : mRecords) {
+                JSONObject stage = new JSONObject();
+                stage.put("name", r.name);
+                stage.put("thread", r.thread);
+                stage.put("startMs", r.startNanos / 1e6);
+                stage.put("wallMs", r.wallNanos / 1e6);
+                stage.put("allocCount", r.allocCount);
+                stage.put("allocBytes", r.allocBytes);
+                stage.put("bitmapBytes", r.bitmapBytes);
+                stages.put(stage);
+            }
+            root.put("stages", stages);
+            return root.toString();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private synchronized void add(Record record) {
+        if (mRecords.size() == MAX_RECORDS)
+            mRecords.removeFirst();
+        mRecords.addLast(record);
+    }
+
+    public class Section {
+        private final String mName;
+        private final Section mParent;
+        private final long mBeginNanos;
+        private final int mBeginAllocCount;
+        private final int mBeginAllocBytes;
+        private long mBitmapBytes;
+
+        @SuppressWarnings("deprecation")
+        private Section(String name, Section parent) {
+            mName = name;
+            mParent = parent;
+            Trace.beginSection(name);
+            mBeginAllocCount = mEnabled ? Debug.getThreadAllocCount() : 0;
+            mBeginAllocBytes = mEnabled ? Debug.getThreadAllocSize() : 0;
+            mBeginNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        @SuppressWarnings("deprecation")
+        public void end() {
+            long end = SystemClock.elapsedRealtimeNanos();
+            Trace.endSection();
+            mCurrent.set(mParent);
+            if (mParent != null)
+                mParent.mBitmapBytes += mBitmapBytes;
+            if (!mEnabled)
+                return;
+            add(new Record(mName, Thread.currentThread().getName(), mBeginNanos - mStartNanos,
+                    end - mBeginNanos, Debug.getThreadAllocCount() - mBeginAllocCount,
+                    Debug.getThreadAllocSize() - mBeginAllocBytes, mBitmapBytes));
+        }
+    }
+
+    private static class Record {
+        final String name;
+        final String thread;
+        final long startNanos;
+        final long wallNanos;
+        final int allocCount;
+        final int allocBytes;
+        final long bitmapBytes;
+
+        Record(String name, String thread, long startNanos, long wallNanos, int allocCount,
+                int allocBytes, long bitmapBytes) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.wallNanos = wallNanos;
+            this.allocCount = allocCount;
+            this.allocBytes = allocBytes;
+            this.bitmapBytes = bitmapBytes;
+        }
+    }
+}
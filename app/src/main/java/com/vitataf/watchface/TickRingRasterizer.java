@@ -0,0 +1,73 @@
+package com.vitataf.watchface;
+
+/**
+ * Pure Java rasterizer for the ring of minute ticks.
+ * <p>
+ * Each tick is the round-capped stroke {@code Canvas.drawLine} would draw for the segment from
+ * {@link DialGeometry#tickSegments}. Its anti-aliased coverage is computed analytically from
+ * the distance of every pixel center to the segment, only within the tick's bounding box, and
+ * written straight into the caller's pixel buffer as unpremultiplied ARGB with the coverage
+ * in alpha, the same values {@code Bitmap.getPixels} returns for the Canvas drawing. The
+ * buffer can then be quantized in place, so the ring never needs a {@code Bitmap}.
+ */
+public final class TickRingRasterizer {
+
+    private TickRingRasterizer() {
+    }
+
+    /**
+     * Draws the ticks into {@code out}, a zero-filled square of side {@code w} pixels.
+     *
+     * @param hourColor   opaque RGB color of the hour ticks
+     * @param minuteColor opaque RGB color of the other ticks
+     * @return {@code out}
+     */
+    public static int[] rasterize(int w, int radiusOffset, int tickLength, float tickWidth,
+            int hourColor, int minuteColor, int[] out) {
+        float[] segments = DialGeometry.tickSegments(w, radiusOffset, tickLength,
+                new float[DialGeometry.TICK_COUNT * DialGeometry.TICK_STRIDE]);
+        float radius = tickWidth / 2f;
+        for (int i = DialGeometry.TICK_COUNT; i --> 0;) {
+            int o = i * DialGeometry.TICK_STRIDE;
+            int rgb = (DialGeometry.isHourTick(i) ? hourColor : minuteColor) & 0x00FFFFFF;
+            drawCapsule(out, w, segments[o], segments[o + 1], segments[o + 2], segments[o + 3],
+                    radius, rgb);
+        }
+        return out;
+    }
+
+    private static void drawCapsule(int[] out, int w, float x0, float y0, float x1, float y1,
+            float radius, int rgb) {
+        // Coverage falls off linearly over one pixel centered on the stroke edge.
+        float reach = radius + 0.5f;
+        int left = Math.max(0, (int)Math.floor(Math.min(x0, x1) - reach));
+        int top = Math.max(0, (int)Math.floor(Math.min(y0, y1) - reach));
+        int right = Math.min(w, (int)Math.ceil(Math.max(x0, x1) + reach));
+        int bottom = Math.min(w, (int)Math.ceil(Math.max(y0, y1) + reach));
+
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float lengthSquared = dx * dx + dy * dy;
+        for (int y = top; y < bottom; y++) {
+            float py = y + 0.5f - y0;
+            for (int x = left; x < right; x++) {
+                float px = x + 0.5f - x0;
+                float t = lengthSquared == 0 ? 0 : (px * dx + py * dy) / lengthSquared;
+                if (t < 0)
+                    t = 0;
+                else if (t > 1)
+                    t = 1;
+                float ex = px - t * dx;
+                float ey = py - t * dy;
+                float coverage = reach - (float)Math.sqrt(ex * ex + ey * ey);
+                if (coverage <= 0)
+                    continue;
+                int alpha = coverage >= 1 ? 255 : Math.round(coverage * 255);
+                int i = y * w + x;
+                // Ticks don't overlap, but keep the stronger coverage if they ever touch.
+                if (alpha > out[i] >>> 24)
+                    out[i] = (alpha << 24) | rgb;
+            }
+        }
+    }
+}
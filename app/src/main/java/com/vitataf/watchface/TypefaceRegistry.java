@@ -0,0 +1,81 @@
+package com.vitataf.watchface;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Typeface;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide cache of the bundled font resources.
+ * <p>
+ * Each font is parsed once, by the first thread that asks for it; threads asking while it is
+ * being parsed wait for that load instead of starting their own. The hit and miss counts in
+ * {@link #describe()}, part of the debug dump, show whether a font was ever parsed twice:
+ * every miss is one parse.
+ */
+public final class TypefaceRegistry {
+
+    private static TypefaceRegistry sInstance;
+
+    private final Resources mResources;
+    private final Map<Integer, FutureTask<Typeface>> mTypefaces = new HashMap<>();
+    private int mHits;
+    private int mMisses;
+
+    private TypefaceRegistry(Resources resources) {
+        mResources = resources;
+    }
+
+    public static synchronized TypefaceRegistry getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new TypefaceRegistry(context.getApplicationContext().getResources());
+        return sInstance;
+    }
+
+    /**
+     * Returns the typeface of a font resource, loading it on the calling thread if no other
+     * thread has.
+     */
+    public Typeface get(final int fontResId) {
+        FutureTask<Typeface> task;
+        boolean load = false;
+        synchronized (this) {
+            task = mTypefaces.get(fontResId);
+            if (task == null) {
+                task = new FutureTask<>(new Callable<Typeface>() {
+                    @Override
+                    public Typeface call() {
+                        return mResources.getFont(fontResId);
+                    }
+                });
+                mTypefaces.put(fontResId, task);
+                mMisses++;
+                load = true;
+            } else {
+                mHits++;
+            }
+        }
+        if (load)
+            task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading a typeface", e);
+        }
+    }
+
+    public synchronized String describe() {
+        return mTypefaces.size() + " fonts, " + mHits + " hits, " + mMisses + " misses";
+    }
+}
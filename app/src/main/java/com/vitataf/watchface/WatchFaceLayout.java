@@ -0,0 +1,183 @@
+package com.vitataf.watchface;
+
+/**
+ * Pure Java bounds math for the decomposition components. Bounds are written as
+ * {left, top, right, bottom} fractions of the ambient display width.
+ * <p>
+ * Pixel measurements are given for the 454px design panel and scaled to the actual ambient
+ * width, rounded to whole pixels, so bitmaps can be drawn at the size they are shown at and
+ * the offload renderer never has to resample them.
+ */
+public final class WatchFaceLayout {
+
+    /** Width of the panel the layout was drawn for. */
+    public static final int DESIGN_DISPLAY_WIDTH = 454;
+
+    // Margin between the panel edge and the ambient drawing area on the design panel.
+    private static final int DESIGN_AMBIENT_INSET = 12;
+    private static final float DESIGN_AMBIENT_WIDTH = DESIGN_DISPLAY_WIDTH - DESIGN_AMBIENT_INSET;
+
+    private static final int[] COMPLICATION_TEXT_SIZE = {23, 22};
+    private static final int[] COMPLICATION_TITLE_SIZE = {35, 25};
+    private static final float[] COMPLICATION_WIDTH = {0.7f, 0.9f};
+    private static final int[] COMPLICATION_TOP_PX = {50, 220};
+    private static final float[] COMPLICATION_HEIGHT = {0.25f, 0.25f};
+    private static final float[] COMPLICATION_CENTER = {0.5f, 0.45f};
+
+    /** Side in design pixels of the square hiding the bottom complication's icon. */
+    public static final int BLOCKING_SIZE = 100;
+
+    // Shift in design pixels of the digital clock to the left of the middle.
+    private static final int MINUTE_GAP = 50;
+    private static final float DAY_OF_WEEK_X = 0.52f;
+    private static final float DAY_OF_MONTH_X = 0.78f;
+
+    /** Indices of the values written by {@link #clockRow}. */
+    public static final int CLOCK_HOUR_X = 0;
+    public static final int CLOCK_COLON_X = 1;
+    public static final int CLOCK_MINUTE_X = 2;
+    public static final int CLOCK_TOP = 3;
+    public static final int CLOCK_BOTTOM = 4;
+    public static final int CLOCK_BLOCKING_X = 5;
+    public static final int CLOCK_ROW_SIZE = 6;
+
+    // The second hand, in design pixels, spans the ambient area less this inset.
+    private static final int SECOND_HAND_INSET = 2;
+    private static final int SECOND_HAND_CENTER_DIAMETER = 10;
+    private static final int SECOND_HAND_TAIL_LENGTH = 20;
+    private static final int SECOND_HAND_STROKE_WIDTH = 3;
+
+    /** Indices of the values written by {@link #secondHand}. */
+    public static final int HAND_CENTER_DIAMETER = 0;
+    public static final int HAND_TAIL_LENGTH = 1;
+    public static final int HAND_LENGTH = 2;
+    public static final int HAND_STROKE_WIDTH = 3;
+    public static final int HAND_SIZE = 4;
+
+    /** Indices of the values written by {@link #dateRow}. */
+    public static final int DATE_DAY_OF_WEEK_X = 0;
+    public static final int DATE_DAY_OF_MONTH_X = 1;
+    public static final int DATE_TOP = 2;
+    public static final int DATE_ROW_SIZE = 3;
+
+    private WatchFaceLayout() {
+    }
+
+    /**
+     * Returns the width of the ambient drawing area on a panel {@code displayWidth} pixels
+     * wide.
+     */
+    public static int ambientWidth(int displayWidth) {
+        return displayWidth - Math.round(DESIGN_AMBIENT_INSET * displayWidth
+                / (float)DESIGN_DISPLAY_WIDTH);
+    }
+
+    /**
+     * Scales a length in design pixels to whole pixels on an ambient area {@code w} pixels
+     * wide. Non-zero lengths never scale below one pixel.
+     */
+    public static int scale(int designPx, float w) {
+        if (designPx == 0)
+            return 0;
+        return Math.max(1, Math.round(designPx * w / DESIGN_AMBIENT_WIDTH));
+    }
+
+    public static int complicationTextSize(int id, float w) {
+        return scale(COMPLICATION_TEXT_SIZE[id], w);
+    }
+
+    public static int complicationTitleSize(int id, float w) {
+        return scale(COMPLICATION_TITLE_SIZE[id], w);
+    }
+
+    /** Side in pixels of the blocking square on an ambient area {@code w} pixels wide. */
+    public static int blockingSize(float w) {
+        return scale(BLOCKING_SIZE, w);
+    }
+
+    /**
+     * Writes the left edges of the hours, the colon and the minutes and the top and bottom of
+     * the digital clock, in pixels of an ambient area {@code w} pixels wide. The clock ends left
+     * of the middle: two digit cells of hours, the colon, then two of minutes. Cells are
+     * {@code glyphWidth} wide whatever the digit. The one-cell strip that blanks the hour tens
+     * is placed on the first hour cell and assumed to be as wide: the BMP strips are, and
+     * {@link GlyphAtlasGenerator} sizes cells on the digits for any glyphs.
+     *
+     * @return {@code out}
+     */
+    public static float[] clockRow(float w, int glyphWidth, int glyphHeight, int colonWidth,
+            float[] out) {
+        float minuteX = w / 2f - glyphWidth - scale(MINUTE_GAP, w);
+        float colonX = minuteX - colonWidth;
+        out[CLOCK_HOUR_X] = colonX - glyphWidth * 2;
+        out[CLOCK_COLON_X] = colonX;
+        out[CLOCK_MINUTE_X] = minuteX;
+        out[CLOCK_TOP] = w / 2f - glyphHeight / 2f;
+        out[CLOCK_BOTTOM] = w / 2f + glyphHeight / 2f;
+        out[CLOCK_BLOCKING_X] = out[CLOCK_HOUR_X];
+        return out;
+    }
+
+    /**
+     * Writes the diameter of the center circle, the length of the tail, the length from the
+     * circle to the tip and the stroke width of the second hand, in pixels of an ambient area
+     * {@code w} pixels wide. Both renderers draw the hand from these.
+     *
+     * @return {@code out}
+     */
+    public static int[] secondHand(int w, int[] out) {
+        int span = w - SECOND_HAND_INSET;
+        int centerDiameter = scale(SECOND_HAND_CENTER_DIAMETER, span);
+        out[HAND_CENTER_DIAMETER] = centerDiameter;
+        out[HAND_TAIL_LENGTH] = scale(SECOND_HAND_TAIL_LENGTH, span);
+        out[HAND_LENGTH] = (span - centerDiameter) / 2;
+        out[HAND_STROKE_WIDTH] = scale(SECOND_HAND_STROKE_WIDTH, span);
+        return out;
+    }
+
+    /**
+     * Writes the left edges of the day of the week and the day of the month and the top of
+     * the date, in pixels of an ambient area {@code w} pixels wide, for a day-of-week glyph
+     * {@code glyphHeight} pixels tall centered on the middle.
+     *
+     * @return {@code out}
+     */
+    public static float[] dateRow(float w, float glyphHeight, float[] out) {
+        out[DATE_DAY_OF_WEEK_X] = DAY_OF_WEEK_X * w;
+        out[DATE_DAY_OF_MONTH_X] = DAY_OF_MONTH_X * w;
+        out[DATE_TOP] = w / 2f - glyphHeight / 2f;
+        return out;
+    }
+
+    /**
+     * Writes the bounds of complication {@code id} on a display {@code w} pixels wide.
+     *
+     * @return {@code out}
+     */
+    public static float[] complicationBounds(int id, float w, float[] out) {
+        float top = scale(COMPLICATION_TOP_PX[id], w) / w;
+        out[0] = COMPLICATION_CENTER[id] - COMPLICATION_WIDTH[id] / 2f;
+        out[1] = top;
+        out[2] = COMPLICATION_CENTER[id] + COMPLICATION_WIDTH[id] / 2f;
+        out[3] = top + COMPLICATION_HEIGHT[id];
+        return out;
+    }
+
+    /**
+     * Writes the bounds of the black square covering the left edge of complication {@code id}
+     * on a display {@code w} pixels wide. The square spans exactly {@link #blockingSize}
+     * pixels.
+     *
+     * @return {@code out}
+     */
+    public static float[] blockingBounds(int id, float w, float[] out) {
+        float top = scale(COMPLICATION_TOP_PX[id], w) / w;
+        float left = COMPLICATION_CENTER[id] - COMPLICATION_WIDTH[id] / 2f;
+        int size = blockingSize(w);
+        out[0] = left;
+        out[1] = top;
+        out[2] = left + size / w;
+        out[3] = top + size / w;
+        return out;
+    }
+}
@@ -0,0 +1,93 @@
+package com.vitataf.watchface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the smoothing strategies actually act on anti-aliased edges, which only carry
+ * their coverage in alpha, by comparing how bright the quantized edge looks on the black face
+ * with how bright the unquantized one does.
+ */
+public class QuantizationStrategiesTest {
+
+    private static final int W = 442;
+    private static final int[] TABLE = Argb1332.colorTable();
+
+    private static final QuantizationStrategy[] SMOOTHING = {
+            QuantizationStrategies.ROUND,
+            QuantizationStrategies.BAYER,
+            QuantizationStrategies.FLOYD_STEINBERG
+    };
+
+    // Mean per pixel difference in summed RGB levels, truncation is about 40.
+    private static final float MAX_EDGE_ERROR = 8;
+
+    @Test
+    public void smoothingStrategiesChangeTheEdges() {
+        int[] ring = ring();
+        int[] truncated = QuantizationStrategies.TRUNCATE.quantize(ring.clone(), W, TABLE, false);
+        for (QuantizationStrategy strategy : SMOOTHING) {
+            int[] quantized = strategy.quantize(ring.clone(), W, TABLE, false);
+            int edges = 0;
+            int changed = 0;
+            for (int i = 0; i < ring.length; i++) {
+                if (!isEdge(ring[i]))
+                    continue;
+                edges++;
+                if (quantized[i] != truncated[i])
+                    changed++;
+            }
+            assertTrue(strategy + " left the edges truncated", changed > edges / 2);
+        }
+    }
+
+    @Test
+    public void smoothingStrategiesKeepTheEdgeBrightness() {
+        int[] ring = ring();
+        for (QuantizationStrategy strategy : SMOOTHING) {
+            int[] quantized = strategy.quantize(ring.clone(), W, TABLE, false);
+            long error = 0;
+            int edges = 0;
+            for (int i = 0; i < ring.length; i++) {
+                if (!isEdge(ring[i]))
+                    continue;
+                edges++;
+                error += brightness(quantized[i]) - brightness(ring[i]);
+            }
+            assertTrue(strategy + ": " + error / edges,
+                    Math.abs(error / (float)edges) < MAX_EDGE_ERROR);
+        }
+    }
+
+    @Test
+    public void transparentPixelsStayTransparent() {
+        int[] ring = ring();
+        for (QuantizationStrategy strategy : SMOOTHING) {
+            int[] quantized = strategy.quantize(ring.clone(), W, TABLE, false);
+            for (int i = 0; i < ring.length; i++) {
+                if (ring[i] >>> 24 == 0)
+                    assertEquals(strategy + " at " + i, 0, quantized[i] >>> 24);
+                else
+                    assertEquals(strategy + " at " + i, 0xFF, quantized[i] >>> 24);
+            }
+        }
+    }
+
+    private static int[] ring() {
+        return TickRingRasterizer.rasterize(W, 0, WatchFaceLayout.scale(10, W),
+                WatchFaceLayout.scale(5, W), 0xFFFFFF, 0x808080, new int[W * W]);
+    }
+
+    private static boolean isEdge(int color) {
+        int a = color >>> 24;
+        return a != 0 && a != 0xFF;
+    }
+
+    // Summed RGB levels of color as shown over black.
+    private static int brightness(int color) {
+        int a = color >>> 24;
+        return (((color >> 16) & 0xFF) + ((color >> 8) & 0xFF) + (color & 0xFF)) * a / 0xFF;
+    }
+}
@@ -0,0 +1,178 @@
+package com.vitataf.watchface;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the layout math on the panel sizes the watch face ships to, with glyphs scaled from
+ * the hand-made strips the way the atlases are.
+ */
+public class WatchFaceLayoutTest {
+
+    private static final int[] PANELS = {320, 360, 390, 454, 480};
+    private static final int[] COMPLICATION_IDS = {0, 1};
+    private static final int BLOCKED_COMPLICATION_ID = 1;
+    private static final float EPSILON = 1e-3f;
+
+    // Design sizes in pixels of the strips on the 454px panel.
+    private static final int CLOCK_GLYPH_WIDTH = 32;
+    private static final int CLOCK_GLYPH_HEIGHT = 42;
+    private static final int COLON_WIDTH = 16;
+    private static final int DATE_GLYPH_WIDTH = 28;
+    private static final int DATE_GLYPH_HEIGHT = 38;
+    private static final int DAY_GLYPH_WIDTH = 97;
+
+    // Range of digit width over cell height of the atlases rendered from the bundled font.
+    private static final float MIN_DIGIT_ASPECT = 0.6f;
+    private static final float MAX_DIGIT_ASPECT = 0.8f;
+
+    @Test
+    public void ambientWidthKeepsTheDesignInset() {
+        assertEquals(442, WatchFaceLayout.ambientWidth(454));
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            assertTrue(panel + ": " + w, w < panel && w > panel * 0.95f);
+            assertEquals(panel + "", w, WatchFaceLayout.scale(442, w));
+        }
+    }
+
+    @Test
+    public void clockRowFitsLeftOfTheMiddle() {
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            int glyphWidth = WatchFaceLayout.scale(CLOCK_GLYPH_WIDTH, w);
+            int glyphHeight = WatchFaceLayout.scale(CLOCK_GLYPH_HEIGHT, w);
+            int colonWidth = WatchFaceLayout.scale(COLON_WIDTH, w);
+            float[] row = clockRow(w);
+
+            float hourX = row[WatchFaceLayout.CLOCK_HOUR_X];
+            float colonX = row[WatchFaceLayout.CLOCK_COLON_X];
+            float minuteX = row[WatchFaceLayout.CLOCK_MINUTE_X];
+            assertTrue(panel + ": hours off the panel", hourX >= 0);
+            assertEquals(panel + ": hours", hourX + 2 * glyphWidth, colonX, EPSILON);
+            assertEquals(panel + ": colon", colonX + colonWidth, minuteX, EPSILON);
+            assertTrue(panel + ": clock crosses the middle", minuteX + 2 * glyphWidth < w / 2f);
+            assertEquals(panel + ": height", glyphHeight,
+                    row[WatchFaceLayout.CLOCK_BOTTOM] - row[WatchFaceLayout.CLOCK_TOP], EPSILON);
+            assertInside(panel + ": clock", w, hourX, row[WatchFaceLayout.CLOCK_TOP],
+                    minuteX + 2 * glyphWidth, row[WatchFaceLayout.CLOCK_BOTTOM]);
+        }
+    }
+
+    @Test
+    public void clockFitsWhateverTheMeasuredDigitWidth() {
+        // The BMP strip is 32 / 42; rendered atlases measure their cells with the font.
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            int glyphHeight = WatchFaceLayout.scale(CLOCK_GLYPH_HEIGHT, w);
+            int colonWidth = WatchFaceLayout.scale(COLON_WIDTH, w);
+            for (int glyphWidth = Math.round(glyphHeight * MIN_DIGIT_ASPECT);
+                    glyphWidth <= Math.round(glyphHeight * MAX_DIGIT_ASPECT); glyphWidth++) {
+                String at = panel + "/" + glyphWidth;
+                float[] row = WatchFaceLayout.clockRow(w, glyphWidth, glyphHeight, colonWidth,
+                        new float[WatchFaceLayout.CLOCK_ROW_SIZE]);
+                float hourX = row[WatchFaceLayout.CLOCK_HOUR_X];
+                float colonX = row[WatchFaceLayout.CLOCK_COLON_X];
+                float minuteX = row[WatchFaceLayout.CLOCK_MINUTE_X];
+                assertTrue(at + ": hours off the panel", hourX >= 0);
+                assertTrue(at + ": clock crosses the middle",
+                        minuteX + 2 * glyphWidth < w / 2f);
+                // The blocking strip shares the clock cell width, so it must stay on the tens.
+                float blockingX = row[WatchFaceLayout.CLOCK_BLOCKING_X];
+                assertTrue(at + ": blocking digit overlaps the hour units",
+                        blockingX >= hourX && blockingX + glyphWidth <= colonX - glyphWidth);
+            }
+        }
+    }
+
+    @Test
+    public void dateRowFitsRightOfTheMiddle() {
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            int dayWidth = WatchFaceLayout.scale(DAY_GLYPH_WIDTH, w);
+            int dayHeight = WatchFaceLayout.scale(DATE_GLYPH_HEIGHT, w);
+            int digitWidth = WatchFaceLayout.scale(DATE_GLYPH_WIDTH, w);
+            float[] row = WatchFaceLayout.dateRow(w, dayHeight,
+                    new float[WatchFaceLayout.DATE_ROW_SIZE]);
+
+            float dayX = row[WatchFaceLayout.DATE_DAY_OF_WEEK_X];
+            float dateX = row[WatchFaceLayout.DATE_DAY_OF_MONTH_X];
+            float top = row[WatchFaceLayout.DATE_TOP];
+            assertTrue(panel + ": date crosses the middle", dayX > w / 2f);
+            assertTrue(panel + ": day of week overlaps the date", dayX + dayWidth <= dateX);
+            assertEquals(panel + ": date not centered", w / 2f, top + dayHeight / 2f, EPSILON);
+            assertInside(panel + ": date", w, dayX, top, dateX + 2 * digitWidth,
+                    top + dayHeight);
+        }
+    }
+
+    @Test
+    public void complicationsStayInsideThePanel() {
+        float[] b = new float[4];
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            for (int id : COMPLICATION_IDS) {
+                WatchFaceLayout.complicationBounds(id, w, b);
+                assertInside(panel + ": complication " + id, 1, b[0], b[1], b[2], b[3]);
+                assertWholePixel(panel + ": complication " + id + " top", b[1] * w);
+            }
+        }
+    }
+
+    @Test
+    public void blockingSquareCoversTheComplicationCorner() {
+        float[] complication = new float[4];
+        float[] blocking = new float[4];
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            int size = WatchFaceLayout.blockingSize(w);
+            WatchFaceLayout.complicationBounds(BLOCKED_COMPLICATION_ID, w, complication);
+            WatchFaceLayout.blockingBounds(BLOCKED_COMPLICATION_ID, w, blocking);
+
+            assertInside(panel + ": blocking square", 1, blocking[0], blocking[1], blocking[2],
+                    blocking[3]);
+            assertEquals(panel + ": left", complication[0], blocking[0], 0f);
+            assertEquals(panel + ": top", complication[1], blocking[1], 0f);
+            assertTrue(panel + ": outside the complication", blocking[2] <= complication[2]
+                    && blocking[3] <= complication[3]);
+            assertEquals(panel + ": width", size, (blocking[2] - blocking[0]) * w, EPSILON);
+            assertEquals(panel + ": height", size, (blocking[3] - blocking[1]) * w, EPSILON);
+        }
+    }
+
+    @Test
+    public void secondHandReachesTheEdgeOfTheDial() {
+        int[] hand = new int[WatchFaceLayout.HAND_SIZE];
+        for (int panel : PANELS) {
+            int w = WatchFaceLayout.ambientWidth(panel);
+            WatchFaceLayout.secondHand(w, hand);
+            float radius = hand[WatchFaceLayout.HAND_CENTER_DIAMETER] / 2f;
+            float tip = radius + hand[WatchFaceLayout.HAND_LENGTH];
+            assertTrue(panel + ": tip " + tip + " off the dial", tip <= w / 2f);
+            assertTrue(panel + ": tip " + tip + " short of the ticks",
+                    tip >= w / 2f - WatchFaceLayout.scale(10, w));
+            assertTrue(panel + ": tail longer than the hand",
+                    hand[WatchFaceLayout.HAND_TAIL_LENGTH] < hand[WatchFaceLayout.HAND_LENGTH]);
+        }
+    }
+
+    private static float[] clockRow(int w) {
+        return WatchFaceLayout.clockRow(w, WatchFaceLayout.scale(CLOCK_GLYPH_WIDTH, w),
+                WatchFaceLayout.scale(CLOCK_GLYPH_HEIGHT, w),
+                WatchFaceLayout.scale(COLON_WIDTH, w),
+                new float[WatchFaceLayout.CLOCK_ROW_SIZE]);
+    }
+
+    private static void assertInside(String message, float size, float left, float top,
+            float right, float bottom) {
+        assertTrue(message + " is empty", left < right && top < bottom);
+        assertTrue(message + " leaves the panel", left >= -EPSILON && top >= -EPSILON
+                && right <= size + EPSILON && bottom <= size + EPSILON);
+    }
+
+    private static void assertWholePixel(String message, float px) {
+        assertEquals(message, Math.round(px), px, EPSILON);
+    }
+}
@@ -0,0 +1,62 @@
+package com.vitataf.watchface.bench;
+
+import com.vitataf.watchface.Argb1332;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the pixel kernels behind {@code get332Bitmap}, {@code get332BlueBitmap} and
+ * {@code rgb888To332} on a full-screen buffer of the given display width.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class Argb1332Benchmark {
+
+    @Param({"320", "390", "454", "480"})
+    public int width;
+
+    private int[] src;
+    private int[] dst;
+    private int[] table;
+
+    @Setup
+    public void setUp() {
+        src = new int[width * width];
+        dst = new int[src.length];
+        table = Argb1332.colorTable();
+        Random random = new Random(width);
+        for (int i = 0; i < src.length; i++)
+            src[i] = random.nextInt();
+    }
+
+    @Benchmark
+    public int[] colorTable() {
+        return Argb1332.colorTable();
+    }
+
+    @Benchmark
+    public int[] quantizeOpaque() {
+        return Argb1332.quantize(src, dst, table, false);
+    }
+
+    @Benchmark
+    public int[] quantizeTransparent() {
+        return Argb1332.quantize(src, dst, table, true);
+    }
+
+    @Benchmark
+    public int[] quantizeBlue() {
+        return Argb1332.quantizeBlue(src, dst);
+    }
+}
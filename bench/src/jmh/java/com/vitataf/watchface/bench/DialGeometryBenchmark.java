@@ -0,0 +1,56 @@
+package com.vitataf.watchface.bench;
+
+import com.vitataf.watchface.DialGeometry;
+import com.vitataf.watchface.TickRingRasterizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the tick geometry loop of {@code getBackgroundComponents} and the rasterization of
+ * the whole ring. {@link #inlineTickSegments} keeps the former per-tick {@code Math.sin} and
+ * {@code Math.cos} calls as a baseline for the {@code DialTrig} tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DialGeometryBenchmark {
+
+    @Param({"320", "390", "454", "480"})
+    public int width;
+
+    private final float[] segments = new float[DialGeometry.TICK_COUNT * DialGeometry.TICK_STRIDE];
+
+    @Benchmark
+    public float[] tickSegments() {
+        return DialGeometry.tickSegments(width, 0, 10, segments);
+    }
+
+    @Benchmark
+    public float[] inlineTickSegments() {
+        int outerRadius = width / 2;
+        int innerRadius = outerRadius - 10;
+        for (int i = DialGeometry.TICK_COUNT; i --> 0;) {
+            float angle = i * (float)Math.PI / 30;
+            int o = i * DialGeometry.TICK_STRIDE;
+            segments[o] = width / 2f + (float)Math.sin(angle) * innerRadius;
+            segments[o + 1] = width / 2f + (float)-Math.cos(angle) * innerRadius;
+            segments[o + 2] = width / 2f + (float)Math.sin(angle) * outerRadius;
+            segments[o + 3] = width / 2f + (float)-Math.cos(angle) * outerRadius;
+        }
+        return segments;
+    }
+
+    @Benchmark
+    public int[] rasterizeTicks() {
+        return TickRingRasterizer.rasterize(width, 0, 10, 5, 0xFFFFFFFF, 0xFF888888,
+                new int[width * width]);
+    }
+}
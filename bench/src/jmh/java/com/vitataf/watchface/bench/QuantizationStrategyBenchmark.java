@@ -0,0 +1,63 @@
+package com.vitataf.watchface.bench;
+
+import com.vitataf.watchface.Argb1332;
+import com.vitataf.watchface.QuantizationStrategies;
+import com.vitataf.watchface.QuantizationStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link QuantizationStrategies} on a full-screen buffer of the given display
+ * width. Every invocation first copies the source into the work buffer, since the strategies
+ * run in place; the copy costs the same for every strategy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuantizationStrategyBenchmark {
+
+    @Param({"320", "390", "454", "480"})
+    public int width;
+
+    @Param({"TRUNCATE", "ROUND", "BAYER", "FLOYD_STEINBERG"})
+    public String strategy;
+
+    private QuantizationStrategy quantizer;
+    private int[] src;
+    private int[] dst;
+    private int[] table;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        quantizer = (QuantizationStrategy)QuantizationStrategies.class.getField(strategy)
+                .get(null);
+        src = new int[width * width];
+        dst = new int[src.length];
+        table = Argb1332.colorTable();
+        Random random = new Random(width);
+        for (int i = 0; i < src.length; i++)
+            src[i] = random.nextInt();
+    }
+
+    @Benchmark
+    public int[] quantizeOpaque() {
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return quantizer.quantize(dst, width, table, false);
+    }
+
+    @Benchmark
+    public int[] quantizeTransparent() {
+        System.arraycopy(src, 0, dst, 0, src.length);
+        return quantizer.quantize(dst, width, table, true);
+    }
+}
@@ -0,0 +1,35 @@
+package com.vitataf.watchface.bench;
+
+import com.vitataf.watchface.WatchFaceLayout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the bounds math of {@code getComplicationComponents}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WatchFaceLayoutBenchmark {
+
+    @Param({"320", "390", "454", "480"})
+    public int width;
+
+    private final float[] bounds = new float[4];
+
+    @Benchmark
+    public void complicationBounds(Blackhole bh) {
+        bh.consume(WatchFaceLayout.complicationBounds(0, width, bounds));
+        bh.consume(WatchFaceLayout.complicationBounds(1, width, bounds));
+        bh.consume(WatchFaceLayout.blockingBounds(1, width, bounds));
+    }
+}
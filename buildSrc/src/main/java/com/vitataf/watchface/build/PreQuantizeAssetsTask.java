@@ -0,0 +1,88 @@
+package com.vitataf.watchface.build;
+
+import com.vitataf.watchface.Argb1332;
+import com.vitataf.watchface.QuantizedImage;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputDirectory;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.TaskAction;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Runs the runtime 332 quantization kernel over drawable BMPs at build time and writes the
+ * results as Q332 assets, named {@code <drawable>_<mode>.q332}, which the watch face loads
+ * instead of converting the drawable on the device.
+ */
+public class PreQuantizeAssetsTask extends DefaultTask {
+
+    private File sourceDir;
+    private File outputDir;
+    private Map<String, Integer> modes = new LinkedHashMap<>();
+
+    @InputDirectory
+    public File getSourceDir() {
+        return sourceDir;
+    }
+
+    public void setSourceDir(File sourceDir) {
+        this.sourceDir = sourceDir;
+    }
+
+    @OutputDirectory
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /** Drawable names (without extension) mapped to the {@code Argb1332.MODE_} to apply. */
+    @Input
+    public Map<String, Integer> getModes() {
+        return modes;
+    }
+
+    public void setModes(Map<String, Integer> modes) {
+        this.modes = modes;
+    }
+
+    @TaskAction
+    public void preQuantize() throws IOException {
+        File quantizedDir = new File(outputDir, "quantized");
+        if (!quantizedDir.isDirectory() && !quantizedDir.mkdirs())
+            throw new GradleException("Unable to create " + quantizedDir);
+
+        int[] table = Argb1332.colorTable();
+        for (Map.Entry<String, Integer> entry : modes.entrySet()) {
+            File src = new File(sourceDir, entry.getKey() + ".bmp");
+            BufferedImage image = ImageIO.read(src);
+            if (image == null)
+                throw new GradleException("Unable to decode " + src);
+
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int mode = entry.getValue();
+            int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+            Argb1332.quantize(pixels, mode, table);
+
+            File dst = new File(quantizedDir, entry.getKey() + "_" + mode + ".q332");
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dst))) {
+                new QuantizedImage(width, height, mode, pixels).writeTo(out);
+            }
+        }
+    }
+}